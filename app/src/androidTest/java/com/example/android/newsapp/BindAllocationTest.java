@@ -0,0 +1,93 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+
+/**
+ * Counts the objects allocated while rows of the {@link ArticleAdapter} are bound on the main
+ * thread, the way they are bound while the user scrolls through a loaded list: the row views are
+ * reused, their thumbnails are in the memory of the {@link ThumbnailCache}, and the thumbnails of
+ * the next rows are preloaded.
+ */
+public class BindAllocationTest extends InstrumentationTestCase {
+
+    /** Number of articles in the list, and of row views they are bound to in turn **/
+    private static final int ARTICLES = 200;
+    private static final int ROWS = 12;
+
+    /** Number of times the list is scrolled down and back up while counting **/
+    private static final int PASSES = 20;
+
+    public void testBindCachedRows() {
+        final Context context = getInstrumentation().getTargetContext();
+        ThumbnailCache thumbnailCache = ThumbnailCache.getInstance(context);
+
+        // 200 articles published over the last 25 days, each with its thumbnail in memory. They
+        // share one Bitmap, so a reused row view keeps its drawable and only the bind is counted.
+        Bitmap thumbnail = Bitmap.createBitmap(152, 91, Bitmap.Config.RGB_565);
+        long now = System.currentTimeMillis();
+        final ArrayList<Article> articles = new ArrayList<>();
+        for (int i = 0; i < ARTICLES; i++) {
+            String thumbnailUrl = "http://127.0.0.1/thumbnails/bind-" + i + ".jpg";
+            thumbnailCache.putBitmap(thumbnailUrl, thumbnail);
+            articles.add(new Article("Title " + i, "Contributor", "World", now - i * 3 * 60 * 60 * 1000L,
+                    "url" + i, thumbnailUrl));
+        }
+
+        final int[] allocations = new int[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ArticleAdapter adapter = new ArticleAdapter(context, articles);
+                FrameLayout parent = new FrameLayout(context);
+                ArticleAdapter.ArticleViewHolder[] holders = new ArticleAdapter.ArticleViewHolder[ROWS];
+                for (int i = 0; i < ROWS; i++) {
+                    holders[i] = adapter.onCreateViewHolder(parent, 0);
+                }
+
+                // Warms up the date cache, the thumbnails of the row views and the JIT.
+                scroll(adapter, holders, 5);
+                allocations[0] = countAllocations(adapter, holders);
+                adapter.releaseThumbnails();
+            }
+        });
+
+        int binds = PASSES * ARTICLES * 2;
+        assertTrue("Allocated " + allocations[0] + " objects in " + binds + " binds", allocations[0] < binds / 100);
+    }
+
+    /**
+     * Returns the number of objects allocated on this thread while scrolling {@link #PASSES} times.
+     */
+    @SuppressWarnings("deprecation")
+    private static int countAllocations(ArticleAdapter adapter, ArticleAdapter.ArticleViewHolder[] holders) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            scroll(adapter, holders, PASSES);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount();
+    }
+
+    /**
+     * Binds every article down the list and back up again, reusing the row views in turn, so the
+     * thumbnails of the next rows are preloaded in both directions.
+     */
+    private static void scroll(ArticleAdapter adapter, ArticleAdapter.ArticleViewHolder[] holders, int passes) {
+        for (int pass = 0; pass < passes; pass++) {
+            for (int position = 0; position < ARTICLES; position++) {
+                adapter.onBindViewHolder(holders[position % ROWS], position);
+            }
+            for (int position = ARTICLES - 1; position >= 0; position--) {
+                adapter.onBindViewHolder(holders[position % ROWS], position);
+            }
+        }
+    }
+}
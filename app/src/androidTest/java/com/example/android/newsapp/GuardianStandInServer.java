@@ -0,0 +1,357 @@
+package com.example.android.newsapp;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.net.Uri;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link GuardianStandInServer} answers the requests of the app in place of the Guardian API, on
+ * a local port, so load latency can be measured without the network.
+ * <p/>
+ * Section and search requests are answered with the recorded responses in the "fixtures" assets,
+ * cut to the requested page size, and their thumbnail URLs point back to this server, which
+ * answers them with a generated JPEG. The server can add a delay before each response, limit the
+ * bandwidth of the body, and answer a share of the requests with 500 Internal Server Error or
+ * 429 Too Many Requests. Connections are kept alive, like those of the Guardian API.
+ */
+public class GuardianStandInServer {
+
+    /** Log messages tag **/
+    private static final String LOG_TAG = GuardianStandInServer.class.getSimpleName();
+
+    /** Path of the thumbnail requests **/
+    private static final String THUMBNAIL_PATH = "/thumbnails/";
+
+    /** Host of the thumbnails in the recorded responses **/
+    private static final String RECORDED_THUMBNAIL_HOST = "https://media.guim.co.uk/";
+
+    /** Page sizes of the recorded responses, smallest first **/
+    private static final int[] FIXTURE_SIZES = {10, 50, 200};
+
+    /** Size of the body chunks written while the bandwidth is limited **/
+    private static final int CHUNK_BYTES = 1024;
+
+    private final AssetManager mAssets;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final Random mRandom = new Random();
+
+    /** Responses by page size, and the generated thumbnail **/
+    private final Map<Integer, byte[]> mResponses = new HashMap<>();
+    private byte[] mThumbnail;
+
+    private ServerSocket mServerSocket;
+    private String mBaseUrl;
+
+    /** Delay before each response, bandwidth of the bodies, and shares of failed requests **/
+    private volatile long mLatencyMillis;
+    private volatile long mBytesPerSecond;
+    private volatile double mErrorRate;
+    private volatile double mTooManyRequestsRate;
+
+    /** Numbers of requests answered, and of those answered with an error or 429 **/
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicInteger mErrorCount = new AtomicInteger();
+    private final AtomicInteger mTooManyRequestsCount = new AtomicInteger();
+
+    /**
+     * Create a {@link GuardianStandInServer}.
+     *
+     * @param assets holding the recorded responses in "fixtures"
+     */
+    public GuardianStandInServer(AssetManager assets) {
+        mAssets = assets;
+    }
+
+    /**
+     * Starts answering requests on a free local port.
+     *
+     * @return the base URL of the server, such as "http://127.0.0.1:40123"
+     */
+    public String start() throws IOException {
+        mThumbnail = createThumbnail();
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mBaseUrl = "http://127.0.0.1:" + mServerSocket.getLocalPort();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        });
+        return mBaseUrl;
+    }
+
+    /**
+     * Stops the server and closes its connections.
+     */
+    public void shutdown() {
+        try {
+            if (mServerSocket != null) {
+                mServerSocket.close();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem closing the server socket.", e);
+        }
+        mExecutor.shutdownNow();
+    }
+
+    /** Sets the delay in milliseconds before each response **/
+    public void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /** Sets the bandwidth of the response bodies in bytes per second, or 0 for no limit **/
+    public void setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /** Sets the share of requests answered with 500 Internal Server Error, between 0 and 1 **/
+    public void setErrorRate(double errorRate) {
+        mErrorRate = errorRate;
+    }
+
+    /** Sets the share of requests answered with 429 Too Many Requests, between 0 and 1 **/
+    public void setTooManyRequestsRate(double tooManyRequestsRate) {
+        mTooManyRequestsRate = tooManyRequestsRate;
+    }
+
+    /** Get the number of requests answered **/
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /** Get the number of requests answered with 500 Internal Server Error **/
+    public int getErrorCount() {
+        return mErrorCount.get();
+    }
+
+    /** Get the number of requests answered with 429 Too Many Requests **/
+    public int getTooManyRequestsCount() {
+        return mTooManyRequestsCount.get();
+    }
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serveConnection(socket);
+                    }
+                });
+            } catch (IOException e) {
+                // The server socket was closed by shutdown().
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of a kept-alive connection until the client closes it.
+     */
+    private void serveConnection(Socket socket) {
+        try {
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = readRequest(input)) != null) {
+                String[] parts = requestLine.split(" ");
+                if (parts.length < 2) {
+                    return;
+                }
+                answer(parts[1], output);
+            }
+        } catch (SocketException e) {
+            // The client closed the connection.
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem answering a request.", e);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing a connection.", e);
+            }
+        }
+    }
+
+    /**
+     * Reads the request line and the headers of a GET request, and returns the request line, or
+     * null if the connection was closed.
+     */
+    private static String readRequest(InputStream input) throws IOException {
+        String requestLine = readLine(input);
+        if (requestLine == null || requestLine.isEmpty()) {
+            return null;
+        }
+        String header;
+        do {
+            header = readLine(input);
+        } while (header != null && !header.isEmpty());
+        return requestLine;
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = input.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    private void answer(String target, OutputStream output) throws IOException {
+        mRequestCount.incrementAndGet();
+        sleep(mLatencyMillis);
+
+        double failure = mRandom.nextDouble();
+        if (failure < mTooManyRequestsRate) {
+            mTooManyRequestsCount.incrementAndGet();
+            write(output, "429 Too Many Requests", "application/json", "Retry-After: 1\r\n",
+                    "{\"message\":\"API rate limit exceeded\"}".getBytes("UTF-8"));
+        } else if (failure < mTooManyRequestsRate + mErrorRate) {
+            mErrorCount.incrementAndGet();
+            write(output, "500 Internal Server Error", "text/plain", "", "Internal Server Error".getBytes("UTF-8"));
+        } else if (target.startsWith(THUMBNAIL_PATH)) {
+            write(output, "200 OK", "image/jpeg", "", mThumbnail);
+        } else {
+            write(output, "200 OK", "application/json", "", responseFor(Uri.parse(target)));
+        }
+    }
+
+    /**
+     * Writes a response, limiting the bandwidth of its body if a limit is set.
+     */
+    private void write(OutputStream output, String status, String contentType, String headers, byte[] body)
+            throws IOException {
+        output.write(("HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: keep-alive\r\n"
+                + headers + "\r\n").getBytes("UTF-8"));
+        long bytesPerSecond = mBytesPerSecond;
+        if (bytesPerSecond <= 0) {
+            output.write(body);
+        } else {
+            for (int offset = 0; offset < body.length; offset += CHUNK_BYTES) {
+                int count = Math.min(CHUNK_BYTES, body.length - offset);
+                output.write(body, offset, count);
+                output.flush();
+                sleep(count * 1000L / bytesPerSecond);
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Returns the recorded response with the page size of the request.
+     */
+    private synchronized byte[] responseFor(Uri request) throws IOException {
+        int pageSize;
+        try {
+            pageSize = Integer.parseInt(request.getQueryParameter("page-size"));
+        } catch (NumberFormatException e) {
+            pageSize = FIXTURE_SIZES[0];
+        }
+        byte[] response = mResponses.get(pageSize);
+        if (response == null) {
+            response = loadResponse(pageSize);
+            mResponses.put(pageSize, response);
+        }
+        return response;
+    }
+
+    /**
+     * Returns the smallest recorded response with at least the page size, cut to the page size,
+     * with its thumbnails pointing to this server.
+     */
+    private byte[] loadResponse(int pageSize) throws IOException {
+        int fixtureSize = FIXTURE_SIZES[FIXTURE_SIZES.length - 1];
+        for (int size : FIXTURE_SIZES) {
+            if (size >= pageSize) {
+                fixtureSize = size;
+                break;
+            }
+        }
+        String recorded = new String(readAsset("fixtures/search-" + fixtureSize + ".json"), "UTF-8")
+                .replace(RECORDED_THUMBNAIL_HOST, mBaseUrl + THUMBNAIL_PATH);
+        try {
+            JSONObject json = new JSONObject(recorded);
+            JSONObject response = json.getJSONObject("response");
+            JSONArray results = response.getJSONArray("results");
+            JSONArray page = new JSONArray();
+            for (int i = 0; i < Math.min(pageSize, results.length()); i++) {
+                page.put(results.get(i));
+            }
+            response.put("results", page);
+            response.put("pageSize", pageSize);
+            return json.toString().getBytes("UTF-8");
+        } catch (JSONException e) {
+            throw new IOException("Invalid fixture of " + fixtureSize + " results", e);
+        }
+    }
+
+    private byte[] readAsset(String name) throws IOException {
+        InputStream input = mAssets.open(name);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns a JPEG of the size of the thumbnails of the Guardian API.
+     */
+    private static byte[] createThumbnail() {
+        Bitmap bitmap = Bitmap.createBitmap(500, 300, Bitmap.Config.RGB_565);
+        new Canvas(bitmap).drawColor(Color.rgb(5, 41, 98));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 80, output);
+        bitmap.recycle();
+        return output.toByteArray();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
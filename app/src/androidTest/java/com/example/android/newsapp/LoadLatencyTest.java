@@ -0,0 +1,146 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.content.Loader;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end-to-end latency of loading a section through {@link ArticleLoader} and
+ * {@link QueryUtils}, against a {@link GuardianStandInServer} with the network conditions of
+ * each test. The p50 and p95 times until the first row can be displayed and until the load is
+ * complete are logged with the tag "LoadLatencyTest".
+ */
+public class LoadLatencyTest extends InstrumentationTestCase {
+
+    /** Log messages tag **/
+    private static final String LOG_TAG = LoadLatencyTest.class.getSimpleName();
+
+    /** Number of loads measured by each test **/
+    private static final int LOADS = 20;
+
+    /** Longest time a load may take **/
+    private static final long LOAD_TIMEOUT_SECONDS = 60;
+
+    private GuardianStandInServer mServer;
+    private String mDefaultBaseUrl;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new GuardianStandInServer(getInstrumentation().getContext().getAssets());
+        mDefaultBaseUrl = QueryUtils.getBaseUrl();
+        QueryUtils.setBaseUrl(mServer.start());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        QueryUtils.setBaseUrl(mDefaultBaseUrl);
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testLocalNetwork() throws Exception {
+        LoadReport report = measureLoads("local");
+        assertEquals(LOADS, report.mCompleted);
+    }
+
+    public void testSlowMobileNetwork() throws Exception {
+        // About a 3G connection: a long round trip and 400 kbit/s.
+        mServer.setLatencyMillis(300);
+        mServer.setBytesPerSecond(50 * 1024);
+        LoadReport report = measureLoads("3g");
+        assertEquals(LOADS, report.mCompleted);
+    }
+
+    public void testUnreliableServer() throws Exception {
+        mServer.setLatencyMillis(100);
+        mServer.setErrorRate(0.1);
+        mServer.setTooManyRequestsRate(0.05);
+        LoadReport report = measureLoads("unreliable");
+        assertTrue(report.mCompleted > 0);
+    }
+
+    /**
+     * Loads the first page of a section {@link #LOADS} times, one after another, and logs the
+     * latency percentiles.
+     */
+    private LoadReport measureLoads(String name) throws InterruptedException {
+        LoadReport report = new LoadReport();
+        for (int i = 0; i < LOADS; i++) {
+            load(report);
+        }
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%s: firstRow p50=%.1fms p95=%.1fms, complete p50=%.1fms p95=%.1fms, "
+                        + "completed=%d/%d, requests=%d, errors=%d, tooManyRequests=%d",
+                name, report.mFirstRow.getPercentile(0.5) / 1000.0, report.mFirstRow.getPercentile(0.95) / 1000.0,
+                report.mComplete.getPercentile(0.5) / 1000.0, report.mComplete.getPercentile(0.95) / 1000.0,
+                report.mCompleted, LOADS, mServer.getRequestCount(), mServer.getErrorCount(),
+                mServer.getTooManyRequestsCount()));
+        Log.i(LOG_TAG, PipelineMetrics.getInstance().getSummary());
+        return report;
+    }
+
+    /**
+     * Runs one load the way the activity does, receiving its partial and complete results on the
+     * main thread, and records its times.
+     */
+    private void load(final LoadReport report) throws InterruptedException {
+        final Context context = getInstrumentation().getTargetContext();
+        final String queryUrl = QueryUtils.buildQueryUrl(context, "us-news", 1, "", null);
+        // A key of its own, so no cached or stored articles are delivered before the network ones.
+        final String cacheKey = ArticleResponseCache.keyFor(queryUrl) + "#" + System.nanoTime();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final ArticleLoader[] loader = new ArticleLoader[1];
+        final long startNanos = System.nanoTime();
+
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                loader[0] = new ArticleLoader(context, queryUrl, cacheKey, "", true);
+                loader[0].registerListener(0, new Loader.OnLoadCompleteListener<List<Article>>() {
+                    private boolean mFirstRowDisplayed;
+
+                    @Override
+                    public void onLoadComplete(Loader<List<Article>> completedLoader, List<Article> articles) {
+                        long micros = (System.nanoTime() - startNanos) / 1000;
+                        if (!mFirstRowDisplayed && articles != null && !articles.isEmpty()) {
+                            mFirstRowDisplayed = true;
+                            report.mFirstRow.record(micros);
+                        }
+                        if (!loader[0].isPartialResult()) {
+                            if (articles != null) {
+                                report.mComplete.record(micros);
+                                report.mCompleted++;
+                            }
+                            finished.countDown();
+                        }
+                    }
+                });
+                loader[0].startLoading();
+            }
+        });
+
+        assertTrue("Load timed out", finished.await(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                loader[0].reset();
+            }
+        });
+    }
+
+    /**
+     * Times of the loads of one test, in microseconds.
+     */
+    private static class LoadReport {
+        private final LatencyHistogram mFirstRow = new LatencyHistogram();
+        private final LatencyHistogram mComplete = new LatencyHistogram();
+        private int mCompleted;
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.android.newsapp;
+
+import android.content.SharedPreferences;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * {@link ApiRateLimiter} admits the requests to the Guardian API, so prefetches, background
+ * refreshes and refresh storms do not use up the per-second and per-day quota of the API key.
+ * <p/>
+ * Requests take a token from a bucket that refills at the allowed rate. Foreground requests, which
+ * the user waits for, wait for a token, while background requests are only admitted if no
+ * foreground request is waiting, a token is free right away and the daily quota has more left
+ * than the share kept for the foreground. When the server answers 429 Too Many Requests or a
+ * server error, no request is admitted until its Retry-After time or an exponential backoff with
+ * jitter has passed, and the rate is halved. It grows back slowly with every successful response.
+ * The requests of the day are counted locally and saved, so the count survives restarts.
+ */
+public class ApiRateLimiter {
+
+    /** Priority of a request the user waits for **/
+    public static final int PRIORITY_FOREGROUND = 0;
+
+    /** Priority of a request made ahead of time, such as a prefetch or background refresh **/
+    public static final int PRIORITY_BACKGROUND = 1;
+
+    /** Default quota of the Guardian API developer key **/
+    public static final int DEFAULT_REQUESTS_PER_SECOND = 12;
+    public static final int DEFAULT_REQUESTS_PER_DAY = 5000;
+
+    /** Share of the daily quota that background requests leave for foreground requests **/
+    private static final double FOREGROUND_RESERVE = 0.1;
+
+    /** Longest time in milliseconds a foreground request waits for a token **/
+    private static final long MAX_WAIT_MILLIS = 10 * 1000;
+
+    /** First and longest backoff in milliseconds after a rejected request **/
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 5 * 60 * 1000;
+
+    /** Lowest rate in requests per second after repeated rejections **/
+    private static final double MIN_RATE = 0.5;
+
+    /** Rate in requests per second added by every successful response **/
+    private static final double RATE_INCREASE = 0.2;
+
+    /** Milliseconds in a day **/
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** SharedPreferences keys of the saved daily count **/
+    private static final String KEY_DAY = "api_quota_day";
+    private static final String KEY_COUNT = "api_quota_count";
+
+    /** The limiter shared by the whole app **/
+    private static final ApiRateLimiter sInstance = new ApiRateLimiter();
+
+    /** Allowed requests per second and per day **/
+    private int mMaxRate = DEFAULT_REQUESTS_PER_SECOND;
+    private int mDailyLimit = DEFAULT_REQUESTS_PER_DAY;
+
+    /** Current rate in requests per second, lowered after rejections **/
+    private double mRate = DEFAULT_REQUESTS_PER_SECOND;
+
+    /** Tokens in the bucket and when they were last refilled **/
+    private double mTokens = DEFAULT_REQUESTS_PER_SECOND;
+    private long mRefilledAt;
+
+    /** Time until which no request is admitted, after a rejection **/
+    private long mBlockedUntil;
+
+    /** Number of rejections in a row, which doubles the backoff **/
+    private int mConsecutiveRejections;
+
+    /** Day since the epoch in UTC and the number of requests admitted on it **/
+    private long mDay;
+    private int mDailyCount;
+
+    /** Number of foreground requests waiting for a token **/
+    private int mWaitingForeground;
+
+    /** Counters of admitted, denied and rejected requests **/
+    private int mAdmittedCount;
+    private int mDeniedCount;
+    private int mRateLimitedCount;
+
+    /** Saves the daily count, or null if it is not saved **/
+    private SharedPreferences mPreferences;
+
+    private final Random mRandom = new Random();
+
+    /**
+     * Returns the limiter shared by the whole app.
+     */
+    public static ApiRateLimiter getInstance() {
+        return sInstance;
+    }
+
+    ApiRateLimiter() {
+        mRefilledAt = currentTimeMillis();
+    }
+
+    /**
+     * Sets the quota of the API key.
+     */
+    public synchronized void setQuota(int requestsPerSecond, int requestsPerDay) {
+        mMaxRate = requestsPerSecond;
+        mRate = Math.min(mRate, requestsPerSecond);
+        mTokens = Math.min(mTokens, requestsPerSecond);
+        mDailyLimit = requestsPerDay;
+    }
+
+    /**
+     * Restores the count of requests of the day and saves it from now on.
+     */
+    public synchronized void setPreferences(SharedPreferences preferences) {
+        mPreferences = preferences;
+        long savedDay = preferences.getLong(KEY_DAY, -1);
+        if (savedDay == currentDay()) {
+            mDay = savedDay;
+            mDailyCount = Math.max(mDailyCount, preferences.getInt(KEY_COUNT, 0));
+        }
+    }
+
+    /**
+     * Admits a request, waiting for a token if it is a foreground request.
+     *
+     * @param priority {@link #PRIORITY_FOREGROUND} or {@link #PRIORITY_BACKGROUND}
+     * @return true if the request may be sent, false if it must not be sent now
+     */
+    public synchronized boolean acquire(int priority) {
+        long deadline = currentTimeMillis() + MAX_WAIT_MILLIS;
+        if (priority != PRIORITY_FOREGROUND) {
+            return tryAcquire(priority);
+        }
+        mWaitingForeground++;
+        try {
+            while (true) {
+                if (tryAcquire(priority)) {
+                    return true;
+                }
+                long waitMillis = millisUntilAdmitted();
+                long now = currentTimeMillis();
+                if (waitMillis < 0 || now + waitMillis > deadline) {
+                    mDeniedCount++;
+                    return false;
+                }
+                wait(Math.max(1, waitMillis));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            mWaitingForeground--;
+        }
+    }
+
+    /**
+     * Admits a request if it can be sent right away, without waiting.
+     */
+    synchronized boolean tryAcquire(int priority) {
+        long now = currentTimeMillis();
+        refill(now);
+        boolean foreground = priority == PRIORITY_FOREGROUND;
+        int limit = foreground ? mDailyLimit : (int) (mDailyLimit * (1 - FOREGROUND_RESERVE));
+        boolean admitted = now >= mBlockedUntil && mTokens >= 1 && mDailyCount < limit
+                && (foreground || mWaitingForeground == 0);
+        if (!admitted) {
+            if (!foreground) {
+                mDeniedCount++;
+            }
+            return false;
+        }
+        mTokens -= 1;
+        mDailyCount++;
+        mAdmittedCount++;
+        if (mPreferences != null) {
+            mPreferences.edit().putLong(KEY_DAY, mDay).putInt(KEY_COUNT, mDailyCount).apply();
+        }
+        return true;
+    }
+
+    /**
+     * Records a successful response, which ends the backoff and raises the rate again.
+     */
+    public synchronized void onSuccess() {
+        mConsecutiveRejections = 0;
+        mRate = Math.min(mMaxRate, mRate + RATE_INCREASE);
+    }
+
+    /**
+     * Records a 429 Too Many Requests or server error response. No request is admitted until the
+     * Retry-After time, if the server sent one, or else until a backoff that doubles with every
+     * rejection in a row, with random jitter, has passed.
+     *
+     * @param retryAfterMillis time the server asked to wait, or -1 if it did not say
+     */
+    public synchronized void onRejected(long retryAfterMillis) {
+        mConsecutiveRejections++;
+        mRateLimitedCount++;
+        mRate = Math.max(MIN_RATE, mRate / 2);
+        mTokens = Math.min(mTokens, 0);
+        long delay = retryAfterMillis >= 0 ? retryAfterMillis
+                : backoffMillis(mConsecutiveRejections, mRandom.nextDouble());
+        mBlockedUntil = Math.max(mBlockedUntil, currentTimeMillis() + delay);
+        notifyAll();
+    }
+
+    /**
+     * Returns the backoff in milliseconds after a number of rejections in a row: a random time
+     * between half and all of an exponentially growing limit.
+     *
+     * @param rejections in a row, at least 1
+     * @param random value between 0 and 1
+     */
+    static long backoffMillis(int rejections, double random) {
+        long limit = MIN_BACKOFF_MILLIS << Math.min(rejections - 1, 20);
+        limit = Math.min(limit, MAX_BACKOFF_MILLIS);
+        return limit / 2 + (long) (random * (limit / 2));
+    }
+
+    /**
+     * Returns the time in milliseconds of a Retry-After header, given in seconds or as an HTTP
+     * date, or -1 if there is none or it cannot be read.
+     */
+    static long parseRetryAfter(String retryAfter, long now) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so it may be a date.
+        }
+        SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, httpDate.parse(value).getTime() - now);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /** Get the number of requests admitted today **/
+    public synchronized int getDailyCount() {
+        refill(currentTimeMillis());
+        return mDailyCount;
+    }
+
+    /** Get the current rate in requests per second **/
+    public synchronized double getRate() {
+        return mRate;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ApiRateLimiter[admitted=" + mAdmittedCount + ", denied=" + mDeniedCount
+                + ", rateLimited=" + mRateLimitedCount + ", today=" + mDailyCount + "/" + mDailyLimit
+                + ", rate=" + mRate + "]";
+    }
+
+    /**
+     * Returns the current time in milliseconds. Tests replace it with a controlled clock.
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Adds the tokens earned since the last refill and starts a new count on a new day.
+     */
+    private void refill(long now) {
+        mTokens = Math.min(mMaxRate, mTokens + (now - mRefilledAt) * mRate / 1000);
+        mRefilledAt = now;
+        long day = now / DAY_MILLIS;
+        if (day != mDay) {
+            mDay = day;
+            mDailyCount = 0;
+        }
+    }
+
+    private long currentDay() {
+        return currentTimeMillis() / DAY_MILLIS;
+    }
+
+    /**
+     * Returns the time in milliseconds until a foreground request can be admitted, or -1 if the
+     * daily quota is used up.
+     */
+    private long millisUntilAdmitted() {
+        if (mDailyCount >= mDailyLimit) {
+            return -1;
+        }
+        long now = currentTimeMillis();
+        long untilToken = mTokens >= 1 ? 0 : (long) Math.ceil((1 - mTokens) * 1000 / mRate);
+        return Math.max(mBlockedUntil - now, untilToken);
+    }
+}
@@ -1,7 +1,5 @@
 package com.example.android.newsapp;
 
-import android.graphics.Bitmap;
-
 /**
  * {@link Article} represents the information about an article and provides the get() methods for the data.
  */
@@ -16,14 +14,17 @@ public class Article {
     /** Section of article **/
     private String mSection;
 
-    /** Date of article **/
-    private String mDate;
+    /** Id of the section of article, used as its path in queries, or null if it is not known **/
+    private String mSectionId;
+
+    /** Publication time of article in milliseconds since the epoch, see {@link ArticleDates} **/
+    private long mPublishedAt;
 
     /** URL of article **/
     private String mUrl;
 
-    /** Thumbnail image of article **/
-    private Bitmap mThumbnail;
+    /** URL of the thumbnail image of article **/
+    private String mThumbnailUrl;
 
     /**
      * Create an Article object
@@ -31,17 +32,36 @@ public class Article {
      * @param title of the article
      * @param contributor of the article, displaying first and last name
      * @param section of the article, i.e. Technology
-     * @param date of article, displayed as mm-dd-yyyy
+     * @param publishedAt time of the article in milliseconds since the epoch, parsed once with
+     *                    {@link ArticleDates#parse(String)} and displayed as MMM dd, yyyy
      * @param url of article used in an implicit intent
-     * @param thumbnail of article that displays image
+     * @param thumbnailUrl of the article image, or an empty String if there is no image
      */
-    public Article(String title, String contributor, String section, String date, String url, Bitmap thumbnail) {
+    public Article(String title, String contributor, String section, long publishedAt, String url, String thumbnailUrl) {
+        this(title, contributor, section, null, publishedAt, url, thumbnailUrl);
+    }
+
+    /**
+     * Create an Article object with the id of its section, such as when it is read from a
+     * response that covers several sections.
+     *
+     * @param title of the article
+     * @param contributor of the article, displaying first and last name
+     * @param section of the article, i.e. Technology
+     * @param sectionId of the article, i.e. technology, or null if it is not known
+     * @param publishedAt time of the article in milliseconds since the epoch
+     * @param url of article used in an implicit intent
+     * @param thumbnailUrl of the article image, or an empty String if there is no image
+     */
+    public Article(String title, String contributor, String section, String sectionId, long publishedAt,
+                   String url, String thumbnailUrl) {
         mTitle = title;
         mContributor = contributor;
         mSection = section;
-        mDate = date;
+        mSectionId = sectionId;
+        mPublishedAt = publishedAt;
         mUrl = url;
-        mThumbnail = thumbnail;
+        mThumbnailUrl = thumbnailUrl;
     }
 
     /** Get the Title of the object **/
@@ -59,9 +79,14 @@ public class Article {
         return mSection;
     }
 
-    /** Get the Date of the object **/
-    public String getDate() {
-        return mDate;
+    /** Get the id of the Section of the object, or null if it is not known **/
+    public String getSectionId() {
+        return mSectionId;
+    }
+
+    /** Get the publication time of the object in milliseconds since the epoch **/
+    public long getPublishedAt() {
+        return mPublishedAt;
     }
 
     /** Get the URL of the object **/
@@ -69,8 +94,8 @@ public class Article {
         return mUrl;
     }
 
-    /** Get the Thumbnail of the object **/
-    public Bitmap getThumbnail() {
-        return mThumbnail;
+    /** Get the Thumbnail URL of the object **/
+    public String getThumbnailUrl() {
+        return mThumbnailUrl;
     }
 }
@@ -1,11 +1,12 @@
 package com.example.android.newsapp;
 
-import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -14,24 +15,32 @@ import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * {@link ArticleAdapter} is an {@link ArrayAdapter} that provides the layout for the
  * list of articles based on the data source taken from the {@link Article} objects and
  * parsed in {@link QueryUtils}.
  * <p/>
+ * The articles are held as consecutive pages of the query. Pages are appended and prepended as
+ * the user scrolls, articles already held are skipped by URL, and the first or last page can be
+ * dropped to limit how many pages stay in memory.
+ * <p/>
+ * A new list of articles is applied with {@link #submitList(List)}, which computes an
+ * {@link ArticleListDiff} on a background thread and notifies only the rows that changed. Items
+ * have stable IDs derived from their URLs, so rows keep their views and scroll position.
+ * <p/>
  * Reference for {@link RecyclerView}: https://medium.com/@thebaileybrew/utilizing-androids-most-underrated-tool-recyclerview-viewholder-72f008627d89
  */
 public class ArticleAdapter extends RecyclerView.Adapter<ArticleAdapter.ArticleViewHolder> {
 
-    /** String containing the split position of Date **/
-    private static final String DATE_SEPARATOR = "T";
+    /** Computes the diffs of submitted lists, one at a time and in order **/
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
 
     /** Layout inflated when data is loaded **/
     private LayoutInflater layoutInflater;
@@ -39,10 +48,38 @@ public class ArticleAdapter extends RecyclerView.Adapter<ArticleAdapter.ArticleV
     /** ArrayList containing {@link Article} objects **/
     private ArrayList<Article> articles;
 
+    /** Loads thumbnails asynchronously when rows are bound **/
+    private ThumbnailLoader thumbnailLoader;
+
+    /** Number of rows past the bound one whose thumbnails are preloaded **/
+    private int thumbnailPreloadRows;
+
+    /** Position of the last bound row, to preload in the direction of scrolling **/
+    private int lastBoundPosition;
+
+    /** Number of articles held from each page, from the first page held to the last **/
+    private List<Integer> pageSizes = new ArrayList<>();
+
+    /** Number of the first page held, starting at 1 **/
+    private int firstPage = 1;
+
+    /** URLs of the articles held, so an article that moved to the next page is not shown twice **/
+    private Set<String> articleUrls = new HashSet<>();
+
+    /** Applies the computed diffs on the main thread **/
+    private Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Incremented whenever the articles change, so a diff of an outdated list is recomputed **/
+    private int listVersion;
+
+    /** Incremented on every submitted list, so only the latest submitted list is applied **/
+    private int submitVersion;
+
     /**
-     * Class containing ArrayList Views.
+     * Class containing ArrayList Views. Each holder has a single click listener, which opens the
+     * article at the holder's current position, so binding a row does not allocate a listener.
      */
-    class ArticleViewHolder extends RecyclerView.ViewHolder {
+    class ArticleViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
         private TextView title;
         private TextView contributor;
         private TextView section;
@@ -57,15 +94,47 @@ public class ArticleAdapter extends RecyclerView.Adapter<ArticleAdapter.ArticleV
             section = (TextView) itemView.findViewById(R.id.section);
             date = (TextView) itemView.findViewById(R.id.date);
             thumbnail = (ImageView) itemView.findViewById(R.id.thumbnail_image);
+            itemView.setOnClickListener(this);
+        }
+
+        /**
+         * Sends an implicit intent to a web browser and opens the article of this row.
+         */
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+
+            // Convert the URL String into a URI object.
+            Uri articleUri = Uri.parse(articles.get(position).getUrl());
+
+            // Create an intent to view the article URI.
+            Intent websiteIntent = new Intent(Intent.ACTION_VIEW, articleUri);
+
+            // Gets PackageManager to query activities that can handle the intent.
+            // Reference: https://developer.android.com/training/basics/intents/sending
+            PackageManager packageManager = v.getContext().getPackageManager();
+            List<ResolveInfo> activities = packageManager.queryIntentActivities(websiteIntent, PackageManager.MATCH_DEFAULT_ONLY);
+            boolean isIntentSafe = activities.size() > 0;
+
+            // If there is an activity, start intent and send to web browser.
+            if (isIntentSafe) {
+                v.getContext().startActivity(websiteIntent);
+            }
         }
     }
 
     /**
      * {@link ArticleAdapter} constructor.
      */
-    public ArticleAdapter(Activity context, ArrayList<Article> articles) {
+    public ArticleAdapter(Context context, ArrayList<Article> articles) {
         this.layoutInflater = LayoutInflater.from(context);
         this.articles = articles;
+        this.thumbnailLoader = new ThumbnailLoader(context);
+        this.thumbnailPreloadRows = context.getResources().getInteger(R.integer.thumbnail_preload_rows);
+        setHasStableIds(true);
     }
 
     /**
@@ -83,7 +152,7 @@ public class ArticleAdapter extends RecyclerView.Adapter<ArticleAdapter.ArticleV
     @Override
     public void onBindViewHolder(ArticleViewHolder holder, int position) {
         // Get the {@link Article} object located at the current position.
-        final Article currentArticle = articles.get(position);
+        Article currentArticle = articles.get(position);
 
         // Sets title to current Article object.
         holder.title.setText(currentArticle.getTitle());
@@ -95,61 +164,57 @@ public class ArticleAdapter extends RecyclerView.Adapter<ArticleAdapter.ArticleV
             holder.contributor.setVisibility(View.GONE);
         } else {
             holder.contributor.setText(contributorText);
+            holder.contributor.setVisibility(View.VISIBLE);
         }
 
         // Sets section to current Article object.
         holder.section.setText(currentArticle.getSection());
 
-        String originalDate = currentArticle.getDate();
-        String date = null;
-        // If date contains a "T", split String here and assign first part to date.
-        if (originalDate.contains(DATE_SEPARATOR)) {
-            String[] parts = originalDate.split(DATE_SEPARATOR);
-            date = parts[0];
-        }
+        // Sets text of the date TextView. The date was parsed when the article was read, and its
+        // display String is cached, so no date objects are created here.
+        holder.date.setText(ArticleDates.format(currentArticle.getPublishedAt()));
+
+        // Starts loading the thumbnail of the current Article object. The text is displayed
+        // right away and the image is set once it has downloaded.
+        thumbnailLoader.load(currentArticle.getThumbnailUrl(), holder.thumbnail);
 
-        // Converts the date to format of "MM-dd-yyyy".
-        // Reference: https://stackoverflow.com/questions/35939337/how-to-convert-date-to-a-particular-format-in-android/35939543#35939543
-        SimpleDateFormat spf = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
-        Date newDate = null;
-        try {
-            newDate = spf.parse(date);
-        } catch (ParseException e) {
-            e.printStackTrace();
+        // Preloads the thumbnails of the next rows in the direction of scrolling, behind the
+        // thumbnails on screen, so they are ready when those rows scroll into view.
+        int step = position >= lastBoundPosition ? 1 : -1;
+        lastBoundPosition = position;
+        for (int i = 1; i <= thumbnailPreloadRows; i++) {
+            int next = position + step * i;
+            if (next < 0 || next >= articles.size()) {
+                break;
+            }
+            thumbnailLoader.preload(articles.get(next).getThumbnailUrl());
         }
-        spf = new SimpleDateFormat("MMM dd, yyyy", Locale.ENGLISH);
-        date = spf.format(newDate);
+    }
 
-        // Sets text of the date TextView.
-        holder.date.setText(date);
+    /**
+     * Cancels the thumbnail request of a row and removes its thumbnail when it is recycled,
+     * since the row will be bound to a different {@link Article}.
+     */
+    @Override
+    public void onViewRecycled(ArticleViewHolder holder) {
+        thumbnailLoader.clear(holder.thumbnail);
+    }
 
-        // Gets Thumbnail and sets bitmap to current Article object.
-        Bitmap articleImage = currentArticle.getThumbnail();
-        holder.thumbnail.setImageBitmap(articleImage);
+    /**
+     * Cancels every pending thumbnail request and removes the displayed thumbnails when the
+     * {@link RecyclerView} no longer uses the adapter.
+     */
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        releaseThumbnails();
+    }
 
-        // Set an OnClickListener() on the RecyclerView, which sends an implicit intent
-        // to a web browser and opens the selected article.
-        holder.itemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                // Convert the URL String into a URI object.
-                Uri articleUri = Uri.parse(currentArticle.getUrl());
-
-                // Create an intent to view the article URI.
-                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, articleUri);
-
-                // Gets PackageManager to query activities that can handle the intent.
-                // Reference: https://developer.android.com/training/basics/intents/sending
-                PackageManager packageManager = v.getContext().getPackageManager();
-                List<ResolveInfo> activities = packageManager.queryIntentActivities(websiteIntent, PackageManager.MATCH_DEFAULT_ONLY);
-                boolean isIntentSafe = activities.size() > 0;
-
-                // If there is an activity, start intent and send to web browser.
-                if (isIntentSafe) {
-                    v.getContext().startActivity(websiteIntent);
-                }
-            }
-        });
+    /**
+     * Method used in {@link MainActivity} to cancel the thumbnail requests and remove the displayed
+     * thumbnails when the activity is destroyed, so their Bitmaps can be reused by the next one.
+     */
+    public void releaseThumbnails() {
+        thumbnailLoader.releaseAll();
     }
 
     @Override
@@ -157,16 +222,110 @@ public class ArticleAdapter extends RecyclerView.Adapter<ArticleAdapter.ArticleV
         return articles.size();
     }
 
+    /**
+     * Returns a stable ID for the article at the position, derived from its URL.
+     */
+    @Override
+    public long getItemId(int position) {
+        return stableIdOf(articles.get(position).getUrl());
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the URL, so the same article always has the same ID.
+     */
+    static long stableIdOf(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Method used in {@link MainActivity} to replace the {@link Article} objects of the adapter
+     * with a new first page. The difference between the lists is computed on a background thread,
+     * and only the rows that were inserted, removed, moved or changed are notified.
+     */
+    public void submitList(List<Article> articleList) {
+        final List<Article> newList = new ArrayList<>(articleList);
+        final List<Article> oldList = new ArrayList<>(articles);
+        final int version = ++submitVersion;
+        final int baseVersion = listVersion;
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ArticleListDiff diff = ArticleListDiff.calculate(oldList, newList);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (version != submitVersion) {
+                            // A newer list has been submitted since.
+                            return;
+                        }
+                        if (baseVersion != listVersion) {
+                            // The articles changed while the diff was computed, so it is recomputed.
+                            submitList(newList);
+                            return;
+                        }
+                        applyList(newList, diff);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Replaces the articles with the submitted list as the only page and notifies the diff.
+     */
+    private void applyList(List<Article> newList, ArticleListDiff diff) {
+        articles.clear();
+        articles.addAll(newList);
+        pageSizes.clear();
+        firstPage = 1;
+        articleUrls.clear();
+        addToLastPage(newList);
+        diff.dispatchTo(new ArticleListDiff.Callback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(fromPosition, toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count) {
+                notifyItemRangeChanged(position, count);
+            }
+        });
+    }
+
     /**
      * Method used in {@link MainActivity} to clear the adapter of {@link Article} objects.
      * Reference: https://github.com/alejandra-gonzalez/LatestInTechNews/blob/master/app/src/main/java/com/example/android/latestintechnews/ArticleAdapter.java
      */
     public void clear() {
         int size = articles.size();
+        articles.clear();
+        pageSizes.clear();
+        firstPage = 1;
+        articleUrls.clear();
+        // Cancels the thumbnails of the removed rows that are still downloading.
+        thumbnailLoader.cancelAll();
+        // Drops a list that was submitted before the adapter was cleared.
+        submitVersion++;
+        listVersion++;
         if (size > 0) {
-            articles.removeAll(articles);
+            notifyItemRangeRemoved(0, size);
         }
-        notifyDataSetChanged();
     }
 
     /**
@@ -174,6 +333,141 @@ public class ArticleAdapter extends RecyclerView.Adapter<ArticleAdapter.ArticleV
      * End reference.
      */
     public void addAll(List<Article> articleList) {
+        int start = articles.size();
         articles.addAll(articleList);
+        addToLastPage(articleList);
+        listVersion++;
+        if (!articleList.isEmpty()) {
+            notifyItemRangeInserted(start, articleList.size());
+        }
+    }
+
+    /**
+     * Adds the page after the last page held, skipping articles that are already held.
+     */
+    public void appendPage(List<Article> page) {
+        List<Article> newArticles = withoutHeldArticles(page);
+        int start = articles.size();
+        articles.addAll(newArticles);
+        pageSizes.add(newArticles.size());
+        listVersion++;
+        if (!newArticles.isEmpty()) {
+            notifyItemRangeInserted(start, newArticles.size());
+        }
+    }
+
+    /**
+     * Adds the page before the first page held, skipping articles that are already held.
+     */
+    public void prependPage(List<Article> page) {
+        List<Article> newArticles = withoutHeldArticles(page);
+        articles.addAll(0, newArticles);
+        pageSizes.add(0, newArticles.size());
+        firstPage--;
+        listVersion++;
+        if (!newArticles.isEmpty()) {
+            notifyItemRangeInserted(0, newArticles.size());
+        }
+    }
+
+    /**
+     * Adds articles published since the first article held to the top of the first page,
+     * skipping articles that are already held, such as after an incremental refresh.
+     */
+    public void addNewArticles(List<Article> newArticles) {
+        List<Article> added = withoutHeldArticles(newArticles);
+        if (pageSizes.isEmpty()) {
+            pageSizes.add(0);
+        }
+        articles.addAll(0, added);
+        pageSizes.set(0, pageSizes.get(0) + added.size());
+        listVersion++;
+        if (!added.isEmpty()) {
+            notifyItemRangeInserted(0, added.size());
+        }
+    }
+
+    /**
+     * Removes the articles of the first page held.
+     */
+    public void dropFirstPage() {
+        if (pageSizes.isEmpty()) {
+            return;
+        }
+        int count = pageSizes.remove(0);
+        List<Article> dropped = articles.subList(0, count);
+        removeUrls(dropped);
+        dropped.clear();
+        firstPage++;
+        listVersion++;
+        if (count > 0) {
+            notifyItemRangeRemoved(0, count);
+        }
+    }
+
+    /**
+     * Removes the articles of the last page held.
+     */
+    public void dropLastPage() {
+        if (pageSizes.isEmpty()) {
+            return;
+        }
+        int count = pageSizes.remove(pageSizes.size() - 1);
+        int start = articles.size() - count;
+        List<Article> dropped = articles.subList(start, articles.size());
+        removeUrls(dropped);
+        dropped.clear();
+        listVersion++;
+        if (count > 0) {
+            notifyItemRangeRemoved(start, count);
+        }
+    }
+
+    /** Get the number of the first page held, starting at 1 **/
+    public int getFirstPage() {
+        return firstPage;
+    }
+
+    /** Get the number of the last page held **/
+    public int getLastPage() {
+        return firstPage + Math.max(pageSizes.size(), 1) - 1;
+    }
+
+    /** Get the number of pages held **/
+    public int getPageCount() {
+        return pageSizes.size();
+    }
+
+    /**
+     * Counts articles added by a load of the first page towards that page.
+     */
+    private void addToLastPage(List<Article> articleList) {
+        if (pageSizes.isEmpty()) {
+            pageSizes.add(0);
+        }
+        int last = pageSizes.size() - 1;
+        pageSizes.set(last, pageSizes.get(last) + articleList.size());
+        for (Article article : articleList) {
+            articleUrls.add(article.getUrl());
+        }
+    }
+
+    /**
+     * Returns the articles of the page whose URL is not held yet, and records their URLs.
+     */
+    private List<Article> withoutHeldArticles(List<Article> page) {
+        List<Article> newArticles = new ArrayList<>(page.size());
+        for (Article article : page) {
+            if (articleUrls.add(article.getUrl())) {
+                newArticles.add(article);
+            }
+        }
+        return newArticles;
+    }
+
+    private void removeUrls(List<Article> articleList) {
+        for (Article article : articleList) {
+            articleUrls.remove(article.getUrl());
+        }
     }
 }
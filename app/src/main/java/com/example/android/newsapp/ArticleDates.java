@@ -0,0 +1,132 @@
+package com.example.android.newsapp;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Helper methods that parse the publication dates of the Guardian API once, when the articles are
+ * read, and format them for display without allocating objects on every bind.
+ * <p/>
+ * Dates are kept as milliseconds since the epoch. The display String of each day is formatted
+ * once and kept in a small cache, so binding a row that shows a recent date only looks it up.
+ */
+public final class ArticleDates {
+
+    /** Publication time of an article whose date could not be read **/
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    /** Milliseconds in a day **/
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** Number of days whose display Strings are cached, a power of two **/
+    private static final int CACHE_SIZE = 64;
+
+    /** Days and display Strings of the cache, indexed by the day modulo the cache size **/
+    private static final long[] sCachedDays = new long[CACHE_SIZE];
+    private static final String[] sCachedStrings = new String[CACHE_SIZE];
+
+    /** Formats dates as "MMM dd, yyyy" in UTC, the day the date String of the API names **/
+    private static final SimpleDateFormat sDisplayFormat = new SimpleDateFormat("MMM dd, yyyy", Locale.ENGLISH);
+
+    static {
+        sDisplayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * A private constructor for {@link ArticleDates} because its methods are static.
+     */
+    private ArticleDates() {
+    }
+
+    /**
+     * Parses a date of the Guardian API, such as "2018-11-20T10:05:00Z", into milliseconds since
+     * the epoch, or returns {@link #UNKNOWN} if it is not such a date. Fractions of seconds and
+     * the time of day are optional.
+     */
+    public static long parse(String date) {
+        if (date == null || date.length() < 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return UNKNOWN;
+        }
+        int year = parseDigits(date, 0, 4);
+        int month = parseDigits(date, 5, 7);
+        int day = parseDigits(date, 8, 10);
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        if (date.length() >= 19 && date.charAt(10) == 'T' && date.charAt(13) == ':' && date.charAt(16) == ':') {
+            hour = parseDigits(date, 11, 13);
+            minute = parseDigits(date, 14, 16);
+            second = parseDigits(date, 17, 19);
+        }
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return UNKNOWN;
+        }
+        long days = daysFromCivil(year, month, day);
+        return ((days * 24 + hour) * 60 + minute) * 60_000L + second * 1000L;
+    }
+
+    /**
+     * Returns the date for display, such as "Nov 20, 2018", or an empty String for {@link #UNKNOWN}.
+     * It is thread safe and does not allocate for a day that is in the cache.
+     */
+    public static synchronized String format(long publishedAt) {
+        if (publishedAt == UNKNOWN) {
+            return "";
+        }
+        // Rounds down, so a time before the epoch belongs to the previous day.
+        long day = publishedAt / DAY_MILLIS;
+        if (publishedAt % DAY_MILLIS < 0) {
+            day--;
+        }
+        int index = (int) (day & (CACHE_SIZE - 1));
+        String cached = sCachedStrings[index];
+        if (cached != null && sCachedDays[index] == day) {
+            return cached;
+        }
+        String formatted = sDisplayFormat.format(new Date(day * DAY_MILLIS));
+        sCachedDays[index] = day;
+        sCachedStrings[index] = formatted;
+        return formatted;
+    }
+
+    /**
+     * Returns the time as an API date, such as "2018-11-20T10:05:00Z", for query parameters like
+     * "from-date".
+     */
+    public static String formatIso(long publishedAt) {
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return isoFormat.format(new Date(publishedAt));
+    }
+
+    /**
+     * Returns the number of a run of digits, or -1 if a character is not a digit.
+     */
+    private static int parseDigits(String s, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to the date in the proleptic Gregorian calendar.
+     * Reference: http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.android.newsapp;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Parses {@link Article} objects from a Guardian API response while it is read from the
+ * {@link InputStream}, instead of reading the whole response into a String and building a
+ * JSONObject tree from it first.
+ * <p/>
+ * Only "response.results[]" is read. Every other value is skipped without being stored, and each
+ * {@link Article} is passed to the {@link Listener} as soon as its JSON object has been read.
+ * Reference: https://developer.android.com/reference/android/util/JsonReader
+ */
+public final class ArticleJsonParser {
+
+    /**
+     * Receives each {@link Article} as soon as it has been parsed.
+     */
+    public interface Listener {
+        void onArticle(Article article);
+    }
+
+    /**
+     * A private constructor for {@link ArticleJsonParser} because its methods are static.
+     */
+    private ArticleJsonParser() {
+    }
+
+    /**
+     * Parses the Guardian API response from the stream and passes each {@link Article} to the listener.
+     *
+     * @return false if the stream was empty, true otherwise
+     * @throws IOException if the stream could not be read or the JSON is not a valid response.
+     * Articles parsed before the problem have already been passed to the listener.
+     */
+    public static boolean parse(InputStream inputStream, Listener listener) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+        try {
+            // An empty response has no JSON to parse, which the caller treats as no data.
+            try {
+                reader.peek();
+            } catch (EOFException e) {
+                return false;
+            }
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("response".equals(reader.nextName())) {
+                    readResponse(reader, listener);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return true;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the "response" object and the articles in its "results" array.
+     */
+    private static void readResponse(JsonReader reader, Listener listener) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("results".equals(reader.nextName())) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    listener.onArticle(readArticle(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads a single article object from the "results" array.
+     */
+    private static Article readArticle(JsonReader reader) throws IOException {
+        String title = null;
+        String section = null;
+        String sectionId = null;
+        String date = null;
+        String url = null;
+        String contributor = null;
+        String thumbnail = "";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "webTitle":
+                    title = readString(reader);
+                    break;
+                case "sectionName":
+                    section = readString(reader);
+                    break;
+                case "sectionId":
+                    sectionId = readString(reader);
+                    break;
+                case "webPublicationDate":
+                    date = readString(reader);
+                    break;
+                case "webUrl":
+                    url = readString(reader);
+                    break;
+                case "tags":
+                    contributor = readContributor(reader);
+                    break;
+                case "fields":
+                    thumbnail = readThumbnail(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (title == null || section == null || date == null || url == null) {
+            throw new IOException("Article is missing its title, section, date or url.");
+        }
+        // Parses the date once here, so displaying it does not parse it again on every bind, and
+        // shares one instance of each section and contributor name between all articles.
+        StringDictionary dictionary = StringDictionary.getShared();
+        return new Article(title, dictionary.intern(contributor), dictionary.intern(section),
+                dictionary.intern(sectionId), ArticleDates.parse(date), url, thumbnail);
+    }
+
+    /**
+     * Reads the "tags" array and returns the name of the last contributor, or null if there are
+     * no contributors.
+     */
+    private static String readContributor(JsonReader reader) throws IOException {
+        String contributor = null;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("webTitle".equals(reader.nextName())) {
+                    contributor = readString(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return contributor;
+    }
+
+    /**
+     * Reads the "fields" object and returns the thumbnail URL, or an empty String if there is none.
+     */
+    private static String readThumbnail(JsonReader reader) throws IOException {
+        String thumbnail = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("thumbnail".equals(reader.nextName())) {
+                String value = readString(reader);
+                thumbnail = value == null ? "" : value;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return thumbnail;
+    }
+
+    /**
+     * Reads a String value, returning null for a JSON null.
+     */
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
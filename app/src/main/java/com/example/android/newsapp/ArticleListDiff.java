@@ -0,0 +1,220 @@
+package com.example.android.newsapp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ArticleListDiff} computes the updates that turn one list of {@link Article}s into another,
+ * so {@link ArticleAdapter} can notify the {@link android.support.v7.widget.RecyclerView} of the
+ * rows that were inserted, removed, moved or changed instead of rebinding every row.
+ * <p/>
+ * Articles are matched by URL. Articles that keep their relative order, the longest increasing
+ * subsequence of their new positions, stay in place; the others are moved. Matched articles whose
+ * title, contributor, section, date or thumbnail differ are reported as changed. The computation
+ * does not touch any view, so it runs on a background thread.
+ */
+public final class ArticleListDiff {
+
+    /**
+     * Receives the updates in the order they must be applied. Positions refer to the list after
+     * all previous updates have been applied.
+     */
+    public interface Callback {
+        void onInserted(int position, int count);
+
+        void onRemoved(int position, int count);
+
+        void onMoved(int fromPosition, int toPosition);
+
+        void onChanged(int position, int count);
+    }
+
+    /** Types of the recorded updates **/
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int MOVE = 2;
+    private static final int CHANGE = 3;
+
+    /** Updates as {type, position or from position, count or to position} **/
+    private final List<int[]> mUpdates = new ArrayList<>();
+
+    private ArticleListDiff() {
+    }
+
+    /**
+     * Computes the updates that turn the old list into the new list.
+     */
+    public static ArticleListDiff calculate(List<Article> oldList, List<Article> newList) {
+        ArticleListDiff diff = new ArticleListDiff();
+        String[] oldKeys = keysOf(oldList);
+        String[] newKeys = keysOf(newList);
+
+        Map<String, Integer> newPositions = new HashMap<>(newKeys.length * 2);
+        for (int i = 0; i < newKeys.length; i++) {
+            newPositions.put(newKeys[i], i);
+        }
+
+        // Removes the articles that are not in the new list, from the last to the first.
+        List<String> working = new ArrayList<>(Arrays.asList(oldKeys));
+        for (int i = oldKeys.length - 1; i >= 0; i--) {
+            if (!newPositions.containsKey(oldKeys[i])) {
+                working.remove(i);
+                diff.add(REMOVE, i, 1);
+            }
+        }
+
+        // Keeps the longest run of articles that are already in the right order.
+        int[] keptNewPositions = new int[working.size()];
+        for (int i = 0; i < keptNewPositions.length; i++) {
+            keptNewPositions[i] = newPositions.get(working.get(i));
+        }
+        boolean[] stays = longestIncreasingSubsequence(keptNewPositions);
+        Map<String, Boolean> staysByKey = new HashMap<>(stays.length * 2);
+        Map<String, Integer> oldPositions = new HashMap<>(oldKeys.length * 2);
+        for (int i = 0; i < stays.length; i++) {
+            staysByKey.put(working.get(i), stays[i]);
+        }
+        for (int i = 0; i < oldKeys.length; i++) {
+            oldPositions.put(oldKeys[i], i);
+        }
+
+        // Walks the new list, inserting new articles and moving misplaced ones after the last
+        // article placed. Articles that stay are only passed over.
+        int cursor = 0;
+        for (String key : newKeys) {
+            Boolean staysInPlace = staysByKey.get(key);
+            if (staysInPlace == null) {
+                working.add(cursor, key);
+                diff.add(INSERT, cursor, 1);
+                cursor++;
+            } else if (staysInPlace) {
+                cursor = working.indexOf(key) + 1;
+            } else {
+                int from = working.indexOf(key);
+                working.remove(from);
+                if (from < cursor) {
+                    cursor--;
+                }
+                working.add(cursor, key);
+                if (from != cursor) {
+                    diff.add(MOVE, from, cursor);
+                }
+                cursor++;
+            }
+        }
+
+        // Reports the matched articles whose displayed content differs.
+        for (int i = 0; i < newKeys.length; i++) {
+            Integer oldPosition = oldPositions.get(newKeys[i]);
+            if (oldPosition != null && !sameContents(oldList.get(oldPosition), newList.get(i))) {
+                diff.add(CHANGE, i, 1);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Passes the updates to the callback in the order they must be applied.
+     */
+    public void dispatchTo(Callback callback) {
+        for (int[] update : mUpdates) {
+            switch (update[0]) {
+                case INSERT:
+                    callback.onInserted(update[1], update[2]);
+                    break;
+                case REMOVE:
+                    callback.onRemoved(update[1], update[2]);
+                    break;
+                case MOVE:
+                    callback.onMoved(update[1], update[2]);
+                    break;
+                case CHANGE:
+                    callback.onChanged(update[1], update[2]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Records an update, merging it into the previous one when they cover adjacent rows.
+     */
+    private void add(int type, int position, int count) {
+        if (type != MOVE && !mUpdates.isEmpty()) {
+            int[] last = mUpdates.get(mUpdates.size() - 1);
+            if (last[0] == type) {
+                if ((type == INSERT || type == CHANGE) && position == last[1] + last[2]) {
+                    last[2] += count;
+                    return;
+                }
+                if (type == REMOVE && position + count == last[1]) {
+                    last[1] = position;
+                    last[2] += count;
+                    return;
+                }
+            }
+        }
+        mUpdates.add(new int[]{type, position, count});
+    }
+
+    /**
+     * Returns a key for every article: its URL, followed by a count for repeated URLs so every
+     * key is unique.
+     */
+    private static String[] keysOf(List<Article> articles) {
+        String[] keys = new String[articles.size()];
+        Map<String, Integer> occurrences = new HashMap<>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            String url = articles.get(i).getUrl();
+            Integer occurrence = occurrences.get(url);
+            occurrences.put(url, occurrence == null ? 1 : occurrence + 1);
+            keys[i] = occurrence == null ? url : url + '#' + occurrence;
+        }
+        return keys;
+    }
+
+    /**
+     * Marks the elements of the longest strictly increasing subsequence of the values.
+     */
+    static boolean[] longestIncreasingSubsequence(int[] values) {
+        int[] tailIndices = new int[values.length];
+        int[] previous = new int[values.length];
+        int length = 0;
+        for (int i = 0; i < values.length; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tailIndices[middle]] < values[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low > 0 ? tailIndices[low - 1] : -1;
+            tailIndices[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] inSubsequence = new boolean[values.length];
+        for (int i = length > 0 ? tailIndices[length - 1] : -1; i >= 0; i = previous[i]) {
+            inSubsequence[i] = true;
+        }
+        return inSubsequence;
+    }
+
+    private static boolean sameContents(Article a, Article b) {
+        return equal(a.getTitle(), b.getTitle())
+                && equal(a.getContributor(), b.getContributor())
+                && equal(a.getSection(), b.getSection())
+                && a.getPublishedAt() == b.getPublishedAt()
+                && equal(a.getThumbnailUrl(), b.getThumbnailUrl());
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
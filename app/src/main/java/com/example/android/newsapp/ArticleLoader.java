@@ -2,29 +2,130 @@ package com.example.android.newsapp;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Loads a list of articles using an AsyncTaskLoader, which performs the network request
  * to the URL.
+ * <p/>
+ * While the response is still being parsed, the articles parsed so far are delivered in chunks,
+ * so the first rows are displayed before the whole page has been read. During such a delivery
+ * {@link #isPartialResult()} returns true, and the complete list is delivered when the load finishes.
+ * <p/>
+ * Articles already known are delivered before the network request is sent: the response of the
+ * same query in the {@link ArticleResponseCache}, or else the local search results for the keyword
+ * or the stored results of the same query in the {@link ArticleStore}. Without a
+ * query URL, such as while offline, only the stored articles are loaded.
+ * <p/>
+ * An incremental load, see {@link #setIncremental(boolean)}, only requests the articles published
+ * since the newest known one and adds them to the top of the known articles, and
+ * {@link #getNewArticles()} returns the articles it added.
  */
 public class ArticleLoader extends AsyncTaskLoader<List<Article>> {
 
     /** Log messages tag **/
     private static final String LOG_TAG = ArticleLoader.class.getName();
 
+    /** Default number of articles parsed between two partial deliveries **/
+    public static final int DEFAULT_CHUNK_SIZE = 10;
+
     /** Query URL **/
     private String mQueryUrl;
 
+    /** Key of the query in the {@link ArticleResponseCache} and {@link ArticleStore} **/
+    private String mCacheKey;
+
+    /** Keyword of the query, searched for in the {@link ArticleStore} **/
+    private String mKeyword;
+
+    /** True if a cached response must be revalidated before it is returned **/
+    private boolean mMustRevalidate;
+
+    /** Number of articles parsed between two partial deliveries **/
+    private final int mChunkSize;
+
+    /** Posts partial results to the main thread **/
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Identifies the load in progress, so partial results of a cancelled load are dropped **/
+    private volatile Object mCurrentLoad;
+
+    /** Cancels the network request of the load in progress when the load is superseded **/
+    private volatile RequestCoalescer.CancelSignal mCancelSignal;
+
+    /** True while a partial result is being delivered **/
+    private boolean mDeliveringPartialResult;
+
+    /** Last partial result delivered, or null if the last result was complete **/
+    private List<Article> mPreviousPartialResult;
+
+    /** True while a result that starts with the previous partial result is being delivered **/
+    private boolean mExtendsPreviousResult;
+
+    /** True if only the articles newer than the known ones are requested **/
+    private boolean mIncremental;
+
+    /** Articles added to the top by the last incremental load, or null if it loaded a whole page **/
+    private volatile List<Article> mNewArticles;
+
     /** {@link ArticleLoader} constructor.
      *
      * @param context of the activity
-     * @param queryUrl to load data
+     * @param queryUrl to load data, or null to load only the articles in the {@link ArticleStore}
+     * @param cacheKey of the query in the {@link ArticleResponseCache} and {@link ArticleStore}
+     * @param keyword of the query, or an empty String
+     * @param mustRevalidate true to ask the server even if a recent response is cached
      */
-    public ArticleLoader(Context context, String queryUrl) {
+    public ArticleLoader(Context context, String queryUrl, String cacheKey, String keyword,
+                         boolean mustRevalidate) {
+        this(context, queryUrl, cacheKey, keyword, mustRevalidate, DEFAULT_CHUNK_SIZE);
+    }
+
+    /** {@link ArticleLoader} constructor.
+     *
+     * @param context of the activity
+     * @param queryUrl to load data, or null to load only the articles in the {@link ArticleStore}
+     * @param cacheKey of the query in the {@link ArticleResponseCache} and {@link ArticleStore}
+     * @param keyword of the query, or an empty String
+     * @param mustRevalidate true to ask the server even if a recent response is cached
+     * @param chunkSize number of articles parsed between two partial deliveries
+     */
+    public ArticleLoader(Context context, String queryUrl, String cacheKey, String keyword,
+                         boolean mustRevalidate, int chunkSize) {
         super(context);
         mQueryUrl = queryUrl;
+        mCacheKey = cacheKey;
+        mKeyword = keyword;
+        mMustRevalidate = mustRevalidate;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Makes the loads request only the articles published since the newest known article of the
+     * query, such as when the user refreshes a list already displayed. A load falls back to the
+     * whole page if the query does not list the newest articles first, no article is known yet,
+     * or the newer articles fill a page, which may leave out articles between them and the known ones.
+     */
+    public void setIncremental(boolean incremental) {
+        mIncremental = incremental;
+    }
+
+    /**
+     * Returns the articles the last load added to the top of the known articles, newest first,
+     * or null if it loaded the whole page. The result of the load holds them followed by the
+     * known articles.
+     */
+    public List<Article> getNewArticles() {
+        return mNewArticles;
     }
 
     /**
@@ -41,12 +142,239 @@ public class ArticleLoader extends AsyncTaskLoader<List<Article>> {
      */
     @Override
     public List<Article> loadInBackground() {
+        final long startNanos = System.nanoTime();
+        mNewArticles = null;
+        ArticleStore store = ArticleStore.getInstance(getContext());
+        // A response of the same query held in memory is more recent than the stored articles.
+        ArticleResponseCache.Entry cached = ArticleResponseCache.getInstance().get(mCacheKey);
+        List<Article> storedArticles = cached != null
+                ? new ArrayList<>(cached.getArticles()) : loadStoredArticles(store);
         if (mQueryUrl == null) {
-            return null;
+            return storedArticles.isEmpty() ? null : storedArticles;
+        }
+        final Object load = new Object();
+        mCurrentLoad = load;
+        RequestCoalescer.CancelSignal cancelSignal = new RequestCoalescer.CancelSignal();
+        mCancelSignal = cancelSignal;
+
+        if (mIncremental && !storedArticles.isEmpty() && QueryUtils.isNewestFirst(mQueryUrl)) {
+            List<Article> articles = loadNewerArticles(store, storedArticles, cancelSignal);
+            if (articles != null) {
+                mCurrentLoad = null;
+                mCancelSignal = null;
+                PipelineMetrics.getInstance().recordSince(PipelineMetrics.LOAD_TOTAL, startNanos);
+                return articles;
+            }
+        }
+
+        // Displays the stored articles while the network request is in progress.
+        if (!storedArticles.isEmpty()) {
+            postPartialResult(load, storedArticles);
         }
+
         // Calls the {@link QueryUtils} fetchArticleData() method to send network request,
-        // parse its response and extract the data.
-        List<Article> articles = QueryUtils.fetchArticleData(mQueryUrl);
+        // parse its response and extract the data. An identical request in progress, such as
+        // the one of a load this one replaced, is joined instead of being sent again.
+        List<Article> articles = QueryUtils.fetchArticleData(mQueryUrl, mCacheKey, mMustRevalidate,
+                new ArticleJsonParser.Listener() {
+            private final List<Article> mParsed = new ArrayList<>();
+
+            @Override
+            public void onArticle(Article article) {
+                // Delivers a full chunk once the next article shows that more are coming, so a
+                // page that fits in one chunk is only delivered once.
+                if (mParsed.size() > 0 && mParsed.size() % mChunkSize == 0) {
+                    postPartialResult(load, new ArrayList<>(mParsed));
+                }
+                if (mParsed.isEmpty()) {
+                    PipelineMetrics.getInstance().recordSince(PipelineMetrics.LOAD_FIRST_ARTICLES, startNanos);
+                }
+                mParsed.add(article);
+            }
+        }, cancelSignal, FetchScheduler.PRIORITY_VISIBLE);
+
+        mCurrentLoad = null;
+        mCancelSignal = null;
+
+        // Falls back to the stored articles if the request failed.
+        if (articles == null) {
+            return storedArticles.isEmpty() ? null : storedArticles;
+        }
+        try {
+            store.putQueryResults(mCacheKey, articles);
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem storing the articles.", e);
+        }
+        // Fills the sections of a combined feed from the same response.
+        CombinedFeed.distribute(getContext(), mQueryUrl, articles);
+        PipelineMetrics.getInstance().recordSince(PipelineMetrics.LOAD_TOTAL, startNanos);
         return articles;
     }
+
+    /**
+     * Requests the articles published since the newest known article and returns them followed
+     * by the known articles, up to the page size, or the known articles if the request failed.
+     * Returns null if the newer articles fill a page, so the whole page must be loaded instead.
+     */
+    private List<Article> loadNewerArticles(ArticleStore store, List<Article> knownArticles,
+                                            RequestCoalescer.CancelSignal cancelSignal) {
+        List<Article> newerArticles = QueryUtils.fetchNewerArticles(mQueryUrl, knownArticles, cancelSignal,
+                FetchScheduler.PRIORITY_VISIBLE);
+        int pageSize = QueryUtils.getPageSize(mQueryUrl);
+        if (newerArticles == null) {
+            mNewArticles = new ArrayList<>();
+            return knownArticles;
+        }
+        if (pageSize > 0 && newerArticles.size() >= pageSize) {
+            return null;
+        }
+
+        List<Article> articles = ArticleStore.mergeNewer(newerArticles, knownArticles,
+                pageSize > 0 ? pageSize : knownArticles.size() + newerArticles.size());
+        mNewArticles = new ArrayList<>(articles.subList(0, articles.size() - countKnown(articles, knownArticles)));
+        if (!mNewArticles.isEmpty()) {
+            ArticleResponseCache.getInstance().put(mCacheKey,
+                    new ArticleResponseCache.Entry(articles, null, null, System.currentTimeMillis()));
+            try {
+                store.putQueryResults(mCacheKey, articles);
+            } catch (SQLiteException e) {
+                Log.e(LOG_TAG, "Problem storing the articles.", e);
+            }
+            CombinedFeed.distribute(getContext(), mQueryUrl, newerArticles);
+        }
+        return articles;
+    }
+
+    /**
+     * Returns the number of articles at the end of the merged list that were already known.
+     */
+    private static int countKnown(List<Article> merged, List<Article> knownArticles) {
+        Set<Article> known = Collections.newSetFromMap(new IdentityHashMap<Article, Boolean>());
+        known.addAll(knownArticles);
+        int count = 0;
+        for (int i = merged.size() - 1; i >= 0 && known.contains(merged.get(i)); i--) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the local search results for the keyword, or the stored results of the query if
+     * there is no keyword.
+     */
+    private List<Article> loadStoredArticles(ArticleStore store) {
+        try {
+            if (mKeyword != null && !ArticleStore.toMatchQuery(mKeyword).isEmpty()) {
+                return store.search(mKeyword);
+            }
+            return store.getQueryResults(mCacheKey);
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem reading the stored articles.", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Returns the URL of the query sent by the loader.
+     */
+    public String getQueryUrl() {
+        return mQueryUrl;
+    }
+
+    /**
+     * Returns true while {@link android.app.LoaderManager.LoaderCallbacks#onLoadFinished} is
+     * receiving the articles parsed so far, and false when it receives the complete list.
+     */
+    public boolean isPartialResult() {
+        return mDeliveringPartialResult;
+    }
+
+    /**
+     * Returns true while {@link android.app.LoaderManager.LoaderCallbacks#onLoadFinished} is
+     * receiving a result that starts with the same articles as the previous partial result, so
+     * only the articles after them are new.
+     */
+    public boolean extendsPreviousResult() {
+        return mExtendsPreviousResult;
+    }
+
+    /**
+     * Records whether the result extends the previous partial result before delivering it.
+     */
+    @Override
+    public void deliverResult(List<Article> articles) {
+        mExtendsPreviousResult = articles != null && mPreviousPartialResult != null
+                && startsWith(articles, mPreviousPartialResult);
+        mPreviousPartialResult = mDeliveringPartialResult ? articles : null;
+        super.deliverResult(articles);
+        mExtendsPreviousResult = false;
+    }
+
+    /**
+     * Drops partial results that have not been delivered yet and cancels the network request
+     * when the load is cancelled, such as when the loader is restarted.
+     */
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        mCurrentLoad = null;
+        cancelRequest();
+    }
+
+    /**
+     * Drops partial results that have not been delivered yet and cancels the network request
+     * when the loader is reset.
+     */
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mCurrentLoad = null;
+        mPreviousPartialResult = null;
+        cancelRequest();
+    }
+
+    /**
+     * Stops waiting for the network request. The {@link RequestCoalescer} closes its connection
+     * unless another load waits for the same request.
+     */
+    private void cancelRequest() {
+        RequestCoalescer.CancelSignal cancelSignal = mCancelSignal;
+        if (cancelSignal != null) {
+            cancelSignal.cancel();
+        }
+    }
+
+    /**
+     * Delivers the articles parsed so far on the main thread, unless the load has since
+     * finished, been cancelled or the loader has stopped.
+     */
+    private void postPartialResult(final Object load, final List<Article> articles) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCurrentLoad != load || !isStarted()) {
+                    return;
+                }
+                mDeliveringPartialResult = true;
+                deliverResult(articles);
+                mDeliveringPartialResult = false;
+            }
+        });
+    }
+
+    /**
+     * Returns true if the list starts with the same article objects as the prefix. Chunks of
+     * the same response share their objects, while stored articles are different objects.
+     */
+    private static boolean startsWith(List<Article> list, List<Article> prefix) {
+        if (list.size() < prefix.size()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.size(); i++) {
+            if (list.get(i) != prefix.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
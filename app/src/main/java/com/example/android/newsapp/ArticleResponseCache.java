@@ -0,0 +1,251 @@
+package com.example.android.newsapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link ArticleResponseCache} keeps the parsed {@link Article}s of recent Guardian API responses
+ * together with their ETag and Last-Modified validators, so {@link QueryUtils} can revalidate a
+ * query with a conditional request and reuse the parsed result when the server answers
+ * 304 Not Modified, instead of downloading and parsing the same feed again.
+ * <p/>
+ * Responses younger than the stale-while-revalidate window are returned right away while they
+ * are revalidated in the background, unless background refreshes are turned off. Entries are
+ * keyed by {@link #keyFor(String)}, the full query without the API key, so {@link MainActivity}
+ * can display a section it has shown before as soon as the user returns to it. The cache holds
+ * a bounded number of articles and drops the least recently used responses first.
+ */
+public class ArticleResponseCache {
+
+    /** Maximum number of articles kept, over all responses **/
+    private static final int MAX_ARTICLES = 500;
+
+    /** Default stale-while-revalidate window in milliseconds **/
+    private static final long DEFAULT_STALE_WHILE_REVALIDATE_MILLIS = 60 * 1000;
+
+    /** Query parameter holding the API key, which is left out of cache keys **/
+    private static final String API_KEY_PARAMETER = "api-key";
+
+    /** The cache shared by the whole app **/
+    private static final ArticleResponseCache sInstance = new ArticleResponseCache();
+
+    /** Responses by cache key, ordered from least to most recently used **/
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+
+    /** Number of articles in all responses **/
+    private int mArticleCount;
+
+    /** Keys that are being revalidated in the background **/
+    private final Set<String> mRevalidating = new HashSet<>();
+
+    /** Performs background revalidations one at a time **/
+    private final ExecutorService mRevalidationExecutor = Executors.newSingleThreadExecutor();
+
+    /** Age in milliseconds up to which a response is returned while it is revalidated **/
+    private volatile long mStaleWhileRevalidateMillis = DEFAULT_STALE_WHILE_REVALIDATE_MILLIS;
+
+    /** False to return recent responses without revalidating them in the background **/
+    private volatile boolean mRefreshInBackground = true;
+
+    /**
+     * A cached response: its parsed articles, validators, when it was received and when it was
+     * last confirmed current.
+     */
+    public static class Entry {
+        private final List<Article> mArticles;
+        private final String mETag;
+        private final String mLastModified;
+        private final long mReceivedAt;
+        private volatile long mValidatedAt;
+
+        /**
+         * @param articles parsed from the response
+         * @param eTag of the response, or null if the server did not send one
+         * @param lastModified of the response, or null if the server did not send one
+         * @param validatedAt time in milliseconds the response was received
+         */
+        public Entry(List<Article> articles, String eTag, String lastModified, long validatedAt) {
+            this(articles, eTag, lastModified, validatedAt, validatedAt);
+        }
+
+        /**
+         * @param articles of the response
+         * @param eTag of the response, or null if the server did not send one
+         * @param lastModified of the response, or null if the server did not send one
+         * @param receivedAt time in milliseconds the articles were received
+         * @param validatedAt time in milliseconds the query was last confirmed current, which is
+         *                    earlier when the articles came from another query
+         */
+        public Entry(List<Article> articles, String eTag, String lastModified, long receivedAt,
+                     long validatedAt) {
+            mArticles = CompactArticleList.copyOf(articles);
+            mETag = eTag;
+            mLastModified = lastModified;
+            mReceivedAt = receivedAt;
+            mValidatedAt = validatedAt;
+        }
+
+        /** Get the parsed articles of the response **/
+        public List<Article> getArticles() {
+            return mArticles;
+        }
+
+        /** Get the ETag of the response, or null **/
+        public String getETag() {
+            return mETag;
+        }
+
+        /** Get the Last-Modified date of the response, or null **/
+        public String getLastModified() {
+            return mLastModified;
+        }
+
+        /** Get the time in milliseconds the response was last confirmed current **/
+        public long getValidatedAt() {
+            return mValidatedAt;
+        }
+
+        /** Get the time in milliseconds since the response was received **/
+        public long getAgeMillis() {
+            return System.currentTimeMillis() - mReceivedAt;
+        }
+    }
+
+    /**
+     * Returns the cache shared by the whole app.
+     */
+    public static ArticleResponseCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the cache key of a request URL: the URL with its query parameters sorted and
+     * the API key left out, so the same query always has the same key.
+     */
+    public static String keyFor(String requestUrl) {
+        int queryStart = requestUrl.indexOf('?');
+        if (queryStart < 0) {
+            return requestUrl;
+        }
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : requestUrl.substring(queryStart + 1).split("&")) {
+            if (!parameter.isEmpty()
+                    && !parameter.equals(API_KEY_PARAMETER)
+                    && !parameter.startsWith(API_KEY_PARAMETER + "=")) {
+                parameters.add(parameter);
+            }
+        }
+        Collections.sort(parameters);
+
+        StringBuilder key = new StringBuilder(requestUrl.substring(0, queryStart));
+        for (int i = 0; i < parameters.size(); i++) {
+            key.append(i == 0 ? '?' : '&').append(parameters.get(i));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Sets the age in milliseconds up to which a cached response is returned right away while
+     * it is revalidated in the background. Older responses are revalidated before returning.
+     */
+    public void setStaleWhileRevalidateMillis(long staleWhileRevalidateMillis) {
+        mStaleWhileRevalidateMillis = staleWhileRevalidateMillis;
+    }
+
+    /**
+     * Sets whether responses returned within the stale-while-revalidate window are revalidated
+     * in the background. Older responses are always revalidated before returning.
+     */
+    public void setRefreshInBackground(boolean refreshInBackground) {
+        mRefreshInBackground = refreshInBackground;
+    }
+
+    /**
+     * Returns the cached response for the key, or null if there is none.
+     */
+    public synchronized Entry get(String key) {
+        return mEntries.get(key);
+    }
+
+    /**
+     * Stores the response for the key.
+     */
+    public synchronized void put(String key, Entry entry) {
+        Entry previous = mEntries.put(key, entry);
+        if (previous != null) {
+            mArticleCount -= previous.getArticles().size();
+        }
+        mArticleCount += entry.getArticles().size();
+
+        // Drops the least recently used responses until the articles fit, but keeps the new one.
+        Iterator<Map.Entry<String, Entry>> eldest = mEntries.entrySet().iterator();
+        while (mArticleCount > MAX_ARTICLES && mEntries.size() > 1) {
+            Entry removed = eldest.next().getValue();
+            eldest.remove();
+            mArticleCount -= removed.getArticles().size();
+        }
+    }
+
+    /**
+     * Returns the number of cached responses.
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns the number of articles in all cached responses.
+     */
+    public synchronized int articleCount() {
+        return mArticleCount;
+    }
+
+    /**
+     * Returns true if the response can be returned right away and revalidated in the background.
+     */
+    public boolean isWithinStaleWindow(Entry entry) {
+        return System.currentTimeMillis() - entry.getValidatedAt() < mStaleWhileRevalidateMillis;
+    }
+
+    /**
+     * Records that the server confirmed the cached response is still current.
+     */
+    public void markValidated(Entry entry) {
+        entry.mValidatedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Runs the revalidation of a key in the background, unless the key is already being revalidated
+     * or background refreshes are turned off.
+     */
+    public void revalidateInBackground(final String key, final Runnable revalidation) {
+        if (!mRefreshInBackground) {
+            return;
+        }
+        synchronized (this) {
+            if (!mRevalidating.add(key)) {
+                return;
+            }
+        }
+        mRevalidationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    revalidation.run();
+                } finally {
+                    synchronized (ArticleResponseCache.this) {
+                        mRevalidating.remove(key);
+                    }
+                }
+            }
+        });
+    }
+}
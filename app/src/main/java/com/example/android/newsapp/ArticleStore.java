@@ -0,0 +1,333 @@
+package com.example.android.newsapp;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link ArticleStore} keeps every {@link Article} fetched from the Guardian API in a SQLite
+ * database, so articles survive process death and can be displayed without a network connection.
+ * <p/>
+ * Articles are stored once per URL, and network results are merged into the stored article with
+ * the same URL. The articles returned by each query are recorded under the query's cache key, see
+ * {@link ArticleResponseCache#keyFor(String)}. An FTS3 full-text index over title, contributor and
+ * section answers keyword searches over articles that have already been seen. Articles that no
+ * stored query returns any more are deleted once they are older than {@link #RETENTION_DAYS},
+ * each time the database is opened.
+ * Reference: https://www.sqlite.org/fts3.html
+ */
+public class ArticleStore {
+
+    /** Log messages tag **/
+    private static final String LOG_TAG = ArticleStore.class.getSimpleName();
+
+    /** Database file name and version **/
+    private static final String DATABASE_NAME = "articles.db";
+    private static final int DATABASE_VERSION = 2;
+
+    /** Table of articles, one row per article URL **/
+    private static final String TABLE_ARTICLES = "articles";
+    private static final String COLUMN_URL = "url";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_CONTRIBUTOR = "contributor";
+    private static final String COLUMN_SECTION = "section";
+    private static final String COLUMN_PUBLISHED_AT = "published_at";
+    private static final String COLUMN_THUMBNAIL = "thumbnail";
+
+    /** Table of the articles returned by each query, in the order they were returned **/
+    private static final String TABLE_QUERY_RESULTS = "query_results";
+    private static final String COLUMN_QUERY_KEY = "query_key";
+    private static final String COLUMN_POSITION = "position";
+
+    /** Full-text index over the articles table, whose docid is the rowid of the article **/
+    private static final String TABLE_ARTICLES_FTS = "articles_fts";
+
+    /** Maximum number of articles returned by a local search **/
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    /** Number of days after publication that an article no query returns is kept for searches **/
+    private static final int RETENTION_DAYS = 30;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** Columns read into an {@link Article}, in the order {@link #readArticles(Cursor)} expects **/
+    private static final String ARTICLE_COLUMNS = "a." + COLUMN_TITLE + ", a." + COLUMN_CONTRIBUTOR
+            + ", a." + COLUMN_SECTION + ", a." + COLUMN_PUBLISHED_AT + ", a." + COLUMN_URL + ", a." + COLUMN_THUMBNAIL;
+
+    /** The store shared by the whole app **/
+    private static ArticleStore sInstance;
+
+    /** Opens and creates the database **/
+    private final DatabaseHelper mDatabaseHelper;
+
+    /**
+     * Returns the store shared by the whole app.
+     */
+    public static synchronized ArticleStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ArticleStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ArticleStore(Context context) {
+        mDatabaseHelper = new DatabaseHelper(context);
+    }
+
+    /**
+     * Merges the articles returned by a query into the store and records them as the query's results.
+     *
+     * @param queryKey of the query, see {@link ArticleResponseCache#keyFor(String)}
+     * @param articles returned by the query
+     */
+    public void putQueryResults(String queryKey, List<Article> articles) {
+        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_QUERY_RESULTS, COLUMN_QUERY_KEY + " = ?", new String[]{queryKey});
+            for (int i = 0; i < articles.size(); i++) {
+                Article article = articles.get(i);
+                mergeArticle(db, article);
+
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_QUERY_KEY, queryKey);
+                values.put(COLUMN_URL, article.getUrl());
+                values.put(COLUMN_POSITION, i);
+                db.insertWithOnConflict(TABLE_QUERY_RESULTS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the stored results of a query, or an empty list if the query has not been stored.
+     *
+     * @param queryKey of the query, see {@link ArticleResponseCache#keyFor(String)}
+     */
+    public List<Article> getQueryResults(String queryKey) {
+        SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + ARTICLE_COLUMNS
+                + " FROM " + TABLE_QUERY_RESULTS + " q JOIN " + TABLE_ARTICLES + " a"
+                + " ON a." + COLUMN_URL + " = q." + COLUMN_URL
+                + " WHERE q." + COLUMN_QUERY_KEY + " = ?"
+                + " ORDER BY q." + COLUMN_POSITION, new String[]{queryKey});
+        return readArticles(cursor);
+    }
+
+    /**
+     * Returns the newer articles followed by the older articles that are not among them, up to
+     * the limit, such as when the articles published since the last fetch are added to the top
+     * of a query's results.
+     *
+     * @param newer articles, newest first
+     * @param older articles, newest first
+     * @param limit maximum number of articles returned
+     */
+    public static List<Article> mergeNewer(List<Article> newer, List<Article> older, int limit) {
+        List<Article> merged = new ArrayList<>(Math.min(limit, newer.size() + older.size()));
+        Set<String> urls = new HashSet<>();
+        for (Article article : newer) {
+            if (merged.size() < limit && urls.add(article.getUrl())) {
+                merged.add(article);
+            }
+        }
+        for (Article article : older) {
+            if (merged.size() < limit && urls.add(article.getUrl())) {
+                merged.add(article);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Searches the title, contributor and section of every stored article for all words of the
+     * keyword, matching words that start with them, and returns the newest matching articles.
+     * Returns an empty list if the keyword has no words.
+     */
+    public List<Article> search(String keyword) {
+        String match = toMatchQuery(keyword);
+        if (match.isEmpty()) {
+            return new ArrayList<>();
+        }
+        SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + ARTICLE_COLUMNS
+                + " FROM " + TABLE_ARTICLES_FTS + " f JOIN " + TABLE_ARTICLES + " a"
+                + " ON a.rowid = f.docid"
+                + " WHERE " + TABLE_ARTICLES_FTS + " MATCH ?"
+                + " ORDER BY a." + COLUMN_PUBLISHED_AT + " DESC"
+                + " LIMIT " + MAX_SEARCH_RESULTS, new String[]{match});
+        return readArticles(cursor);
+    }
+
+    /**
+     * Converts a keyword into an FTS3 MATCH query of prefix terms that must all match, such as
+     * "climate* change*". Characters other than letters and digits separate the words, and the
+     * words are lower case, so the keyword cannot use FTS3 operators such as OR and NOT.
+     */
+    static String toMatchQuery(String keyword) {
+        StringBuilder match = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= keyword.length(); i++) {
+            char c = i < keyword.length() ? keyword.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(word).append('*');
+                word.setLength(0);
+            }
+        }
+        return match.toString();
+    }
+
+    /**
+     * Inserts the article, or updates the stored article with the same URL, and updates its
+     * entry in the full-text index.
+     */
+    private static void mergeArticle(SQLiteDatabase db, Article article) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TITLE, article.getTitle());
+        values.put(COLUMN_CONTRIBUTOR, article.getContributor());
+        values.put(COLUMN_SECTION, article.getSection());
+        values.put(COLUMN_PUBLISHED_AT, article.getPublishedAt());
+        values.put(COLUMN_THUMBNAIL, article.getThumbnailUrl());
+
+        String[] urlArgs = new String[]{article.getUrl()};
+        long rowId;
+        // Updates in place rather than replacing the row, so its rowid and index entry stay valid.
+        if (db.update(TABLE_ARTICLES, values, COLUMN_URL + " = ?", urlArgs) > 0) {
+            rowId = queryRowId(db, urlArgs);
+            db.delete(TABLE_ARTICLES_FTS, "docid = ?", new String[]{String.valueOf(rowId)});
+        } else {
+            values.put(COLUMN_URL, article.getUrl());
+            rowId = db.insertWithOnConflict(TABLE_ARTICLES, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        }
+        if (rowId < 0) {
+            Log.e(LOG_TAG, "Problem storing the article " + article.getUrl());
+            return;
+        }
+
+        db.execSQL("INSERT INTO " + TABLE_ARTICLES_FTS + " (docid, " + COLUMN_TITLE + ", "
+                        + COLUMN_CONTRIBUTOR + ", " + COLUMN_SECTION + ") VALUES (?, ?, ?, ?)",
+                new Object[]{rowId, article.getTitle(), article.getContributor(), article.getSection()});
+    }
+
+    /**
+     * Deletes the articles that no stored query returns and that were published before the given
+     * time, together with their entries in the full-text index.
+     *
+     * @return the number of articles deleted
+     */
+    private static int deleteUnreferencedArticles(SQLiteDatabase db, long publishedBefore) {
+        String where = COLUMN_PUBLISHED_AT + " < ? AND " + COLUMN_URL + " NOT IN (SELECT "
+                + COLUMN_URL + " FROM " + TABLE_QUERY_RESULTS + ")";
+        String[] whereArgs = new String[]{String.valueOf(publishedBefore)};
+        db.beginTransaction();
+        try {
+            // The index entries are deleted first, while their articles can still be selected.
+            db.execSQL("DELETE FROM " + TABLE_ARTICLES_FTS + " WHERE docid IN (SELECT rowid FROM "
+                    + TABLE_ARTICLES + " WHERE " + where + ")", whereArgs);
+            int deleted = db.delete(TABLE_ARTICLES, where, whereArgs);
+            db.setTransactionSuccessful();
+            return deleted;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the rowid of the stored article with the URL, or -1 if there is none.
+     */
+    private static long queryRowId(SQLiteDatabase db, String[] urlArgs) {
+        Cursor cursor = db.rawQuery("SELECT rowid FROM " + TABLE_ARTICLES
+                + " WHERE " + COLUMN_URL + " = ?", urlArgs);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads the articles selected with {@link #ARTICLE_COLUMNS} and closes the cursor. Section and
+     * contributor names are shared through the {@link StringDictionary}.
+     */
+    private static List<Article> readArticles(Cursor cursor) {
+        List<Article> articles = new ArrayList<>(cursor.getCount());
+        StringDictionary dictionary = StringDictionary.getShared();
+        try {
+            while (cursor.moveToNext()) {
+                articles.add(new Article(cursor.getString(0), dictionary.intern(cursor.getString(1)),
+                        dictionary.intern(cursor.getString(2)), cursor.getLong(3), cursor.getString(4),
+                        cursor.getString(5)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return articles;
+    }
+
+    /**
+     * Creates the tables of the store.
+     */
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_ARTICLES + " ("
+                    + COLUMN_URL + " TEXT NOT NULL UNIQUE, "
+                    + COLUMN_TITLE + " TEXT NOT NULL, "
+                    + COLUMN_CONTRIBUTOR + " TEXT, "
+                    + COLUMN_SECTION + " TEXT NOT NULL, "
+                    + COLUMN_PUBLISHED_AT + " INTEGER NOT NULL, "
+                    + COLUMN_THUMBNAIL + " TEXT)");
+            db.execSQL("CREATE TABLE " + TABLE_QUERY_RESULTS + " ("
+                    + COLUMN_QUERY_KEY + " TEXT NOT NULL, "
+                    + COLUMN_URL + " TEXT NOT NULL, "
+                    + COLUMN_POSITION + " INTEGER NOT NULL, "
+                    + "PRIMARY KEY (" + COLUMN_QUERY_KEY + ", " + COLUMN_URL + "))");
+            db.execSQL("CREATE VIRTUAL TABLE " + TABLE_ARTICLES_FTS + " USING fts3("
+                    + COLUMN_TITLE + ", " + COLUMN_CONTRIBUTOR + ", " + COLUMN_SECTION + ")");
+        }
+
+        /**
+         * Deletes the articles past their retention, so the store does not grow with every
+         * article ever fetched.
+         */
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            if (db.isReadOnly()) {
+                return;
+            }
+            try {
+                deleteUnreferencedArticles(db, System.currentTimeMillis() - RETENTION_DAYS * DAY_MILLIS);
+            } catch (SQLiteException e) {
+                Log.e(LOG_TAG, "Problem deleting old articles.", e);
+            }
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTICLES_FTS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_QUERY_RESULTS);
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTICLES);
+            onCreate(db);
+        }
+    }
+}
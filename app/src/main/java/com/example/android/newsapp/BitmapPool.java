@@ -0,0 +1,196 @@
+package com.example.android.newsapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link BitmapPool} keeps Bitmaps that are no longer used, so {@link ThumbnailDecoder} can decode
+ * new thumbnails into their memory with {@link BitmapFactory.Options#inBitmap} instead of
+ * allocating a new Bitmap for every row that scrolls into view.
+ * <p/>
+ * A Bitmap is only reused once it is neither in the memory cache nor displayed by an ImageView.
+ * {@link ThumbnailCache} reports Bitmaps that leave the memory cache with {@link #onRemovedFromCache(Bitmap)},
+ * and {@link ThumbnailLoader} reports Bitmaps set on and removed from ImageViews with
+ * {@link #acquire(Bitmap)} and {@link #release(Bitmap)}. All methods are thread safe.
+ */
+public class BitmapPool {
+
+    /** Maximum number of bytes of the Bitmaps kept for reuse **/
+    private final int mMaxBytes;
+
+    /** Number of ImageViews displaying each Bitmap, and of pins on its way to one **/
+    private final Map<Bitmap, Integer> mUseCounts = new IdentityHashMap<>();
+
+    /** Bitmaps removed from the memory cache that are still displayed **/
+    private final Set<Bitmap> mUncached = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
+    /** Bitmaps that can be reused, from least to most recently added **/
+    private final List<Bitmap> mReusable = new ArrayList<>();
+
+    /** Total size of the reusable Bitmaps **/
+    private int mSize;
+
+    /** Counters for Bitmaps reused and Bitmaps requested that could not be reused **/
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * Create a {@link BitmapPool}.
+     *
+     * @param maxBytes maximum number of bytes of the Bitmaps kept for reuse
+     */
+    public BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Records that an ImageView now displays the Bitmap, or pins a Bitmap that is about to be
+     * displayed so it is not reused in the meantime.
+     */
+    public synchronized void acquire(Bitmap bitmap) {
+        Integer count = mUseCounts.get(bitmap);
+        mUseCounts.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Records that an ImageView no longer displays the Bitmap. The Bitmap becomes reusable if it
+     * is also no longer in the memory cache.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        Integer count = mUseCounts.get(bitmap);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            mUseCounts.put(bitmap, count - 1);
+            return;
+        }
+        mUseCounts.remove(bitmap);
+        if (mUncached.remove(bitmap)) {
+            addReusable(bitmap);
+        }
+    }
+
+    /**
+     * Records that the Bitmap is no longer in the memory cache. The Bitmap becomes reusable if
+     * no ImageView displays it.
+     */
+    public synchronized void onRemovedFromCache(Bitmap bitmap) {
+        if (mUseCounts.containsKey(bitmap)) {
+            mUncached.add(bitmap);
+        } else {
+            addReusable(bitmap);
+        }
+    }
+
+    /**
+     * Removes and returns a reusable Bitmap that a decode with the given options can decode into,
+     * or null if there is none.
+     *
+     * @param options of the decode, after the bounds and sample size have been set
+     */
+    public synchronized Bitmap get(BitmapFactory.Options options) {
+        for (Iterator<Bitmap> iterator = mReusable.iterator(); iterator.hasNext(); ) {
+            Bitmap candidate = iterator.next();
+            if (candidate.isRecycled()) {
+                mSize -= sizeOf(candidate);
+                iterator.remove();
+            } else if (canDecodeInto(candidate, options)) {
+                mSize -= sizeOf(candidate);
+                iterator.remove();
+                mHitCount++;
+                return candidate;
+            }
+        }
+        mMissCount++;
+        return null;
+    }
+
+    /** Releases every reusable Bitmap, such as when the system is low on memory **/
+    public synchronized void clear() {
+        mReusable.clear();
+        mSize = 0;
+    }
+
+    /** Get the total size of the reusable Bitmaps in bytes **/
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /** Get the number of decodes that reused a Bitmap **/
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    /** Get the number of decodes that had to allocate a new Bitmap **/
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Returns the number of bytes the Bitmap occupies in memory.
+     */
+    public static int sizeOf(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    /**
+     * Adds a Bitmap to the reusable Bitmaps and drops the oldest ones if the pool is too large.
+     */
+    private void addReusable(Bitmap bitmap) {
+        if (!bitmap.isMutable() || bitmap.isRecycled() || sizeOf(bitmap) > mMaxBytes) {
+            return;
+        }
+        mReusable.add(bitmap);
+        mSize += sizeOf(bitmap);
+        while (mSize > mMaxBytes) {
+            mSize -= sizeOf(mReusable.remove(0));
+        }
+    }
+
+    /**
+     * Returns true if a decode with the options can use the candidate as its inBitmap.
+     * Reference: https://developer.android.com/topic/performance/graphics/manage-memory
+     */
+    private static boolean canDecodeInto(Bitmap candidate, BitmapFactory.Options options) {
+        int sampleSize = Math.max(1, options.inSampleSize);
+        int width = options.outWidth / sampleSize;
+        int height = options.outHeight / sampleSize;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // From KitKat, any Bitmap that is at least as large as the decoded image can be reused.
+            int byteCount = width * height * bytesPerPixel(options.inPreferredConfig);
+            return byteCount <= candidate.getAllocationByteCount();
+        }
+
+        // Before KitKat, the Bitmap must have exactly the same size and no sampling may be used.
+        return sampleSize == 1
+                && candidate.getWidth() == width
+                && candidate.getHeight() == height
+                && candidate.getConfig() == options.inPreferredConfig;
+    }
+
+    /**
+     * Returns the number of bytes used for one pixel in the config.
+     */
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+}
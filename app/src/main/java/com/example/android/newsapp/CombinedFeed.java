@@ -0,0 +1,158 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link CombinedFeed} splits the results of a query that covers several sections, such as the
+ * {@link QueryUtils#TOP_STORIES} feed, back out per section, so a single request to the Guardian
+ * API fills every section instead of one request per section.
+ * <p/>
+ * The articles of each section are merged by date with the articles already held for the
+ * section's own query, up to its page size, and put in the {@link ArticleStore} under that query's
+ * key. They also replace the query's response in the {@link ArticleResponseCache}, unless that
+ * response has validators, which are kept for its next conditional request. Opening the section
+ * then shows them right away while its own query is revalidated. Sections whose own query is not ordered by newest are left
+ * alone, since the newest articles of the combined feed are not their first page.
+ */
+public final class CombinedFeed {
+
+    /** Log messages tag **/
+    private static final String LOG_TAG = CombinedFeed.class.getSimpleName();
+
+    /** Orders articles newest first **/
+    private static final Comparator<Article> NEWEST_FIRST = new Comparator<Article>() {
+        @Override
+        public int compare(Article first, Article second) {
+            long a = first.getPublishedAt();
+            long b = second.getPublishedAt();
+            return a > b ? -1 : (a == b ? 0 : 1);
+        }
+    };
+
+    /**
+     * A private constructor for {@link CombinedFeed} because its methods are static.
+     */
+    private CombinedFeed() {
+    }
+
+    /**
+     * Adds the articles of the first page of a query that covers several sections to the held
+     * articles of each section's own query. Does nothing for other queries and later pages.
+     * Must be called on a background thread.
+     *
+     * @param context used to build the queries of the sections and open the {@link ArticleStore}
+     * @param queryUrl of the combined query
+     * @param articles of the combined query, newest first
+     */
+    public static void distribute(Context context, String queryUrl, List<Article> articles) {
+        List<String> sections = QueryUtils.getSections(queryUrl);
+        Uri uri = Uri.parse(queryUrl);
+        if (sections.size() < 2 || uri.getQueryParameter("page") != null) {
+            return;
+        }
+        String keyword = uri.getQueryParameter("q");
+        ArticleResponseCache responseCache = ArticleResponseCache.getInstance();
+        ArticleStore store = ArticleStore.getInstance(context);
+        for (Map.Entry<String, List<Article>> section : splitBySection(articles, sections).entrySet()) {
+            String sectionUrl = QueryUtils.buildQueryUrl(context, section.getKey(), 1,
+                    keyword != null ? keyword : "", null);
+            if (section.getValue().isEmpty() || !QueryUtils.isNewestFirst(sectionUrl)) {
+                continue;
+            }
+            String cacheKey = ArticleResponseCache.keyFor(sectionUrl);
+            try {
+                ArticleResponseCache.Entry cached = responseCache.get(cacheKey);
+                List<Article> held = cached != null ? cached.getArticles() : store.getQueryResults(cacheKey);
+                int pageSize = QueryUtils.getPageSize(sectionUrl);
+                List<Article> merged = mergeByDate(section.getValue(), held,
+                        pageSize > 0 ? pageSize : held.size() + section.getValue().size());
+                if (!hasNewArticles(merged, held)) {
+                    continue;
+                }
+                // A response of the section's own query keeps its validators, so its next
+                // revalidation can still be answered with 304 Not Modified. Otherwise the merged
+                // articles are cached, but the section's query still counts as not validated.
+                if (cached == null || (cached.getETag() == null && cached.getLastModified() == null)) {
+                    responseCache.put(cacheKey, new ArticleResponseCache.Entry(merged, null, null,
+                            System.currentTimeMillis(), cached != null ? cached.getValidatedAt() : 0));
+                }
+                store.putQueryResults(cacheKey, merged);
+            } catch (SQLiteException e) {
+                Log.e(LOG_TAG, "Problem storing the articles of " + section.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the articles of each section, in the order of the sections and keeping the order of
+     * the articles. Articles of other sections, or without a known section, are left out.
+     *
+     * @param articles of a query that covers several sections
+     * @param sections ids of the sections, see {@link Article#getSectionId()}
+     */
+    static Map<String, List<Article>> splitBySection(List<Article> articles, List<String> sections) {
+        Map<String, List<Article>> bySection = new LinkedHashMap<>();
+        for (String section : sections) {
+            bySection.put(section, new ArrayList<Article>());
+        }
+        for (Article article : articles) {
+            List<Article> sectionArticles = article.getSectionId() != null
+                    ? bySection.get(article.getSectionId()) : null;
+            if (sectionArticles != null) {
+                sectionArticles.add(article);
+            }
+        }
+        return bySection;
+    }
+
+    /**
+     * Returns the articles of both lists, newest first and each URL once, up to the limit. An
+     * article in both lists is taken from the first list.
+     *
+     * @param fresh articles, such as those just received
+     * @param held articles, such as those already cached
+     * @param limit maximum number of articles returned
+     */
+    static List<Article> mergeByDate(List<Article> fresh, List<Article> held, int limit) {
+        List<Article> merged = new ArrayList<>(fresh.size() + held.size());
+        Set<String> urls = new HashSet<>();
+        for (Article article : fresh) {
+            if (urls.add(article.getUrl())) {
+                merged.add(article);
+            }
+        }
+        for (Article article : held) {
+            if (urls.add(article.getUrl())) {
+                merged.add(article);
+            }
+        }
+        // The sort is stable, so articles of the same time keep their order.
+        Collections.sort(merged, NEWEST_FIRST);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    private static boolean hasNewArticles(List<Article> merged, List<Article> held) {
+        Set<String> heldUrls = new HashSet<>();
+        for (Article article : held) {
+            heldUrls.add(article.getUrl());
+        }
+        for (Article article : merged) {
+            if (!heldUrls.contains(article.getUrl())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.newsapp;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * {@link CompactArticleList} is an immutable list of {@link Article}s stored column by column, for
+ * the collections kept in memory for a long time, such as the responses of the
+ * {@link ArticleResponseCache}.
+ * <p/>
+ * Instead of an {@link Article} object and its Strings, each article takes one slot in parallel
+ * arrays: the section, section id and contributor are ids in the shared {@link StringDictionary}, the
+ * publication time is a long, and the title, URL and thumbnail URL are UTF-8 bytes in one array
+ * shared by the whole list. {@link #get(int)} returns a new {@link Article} built from the slot,
+ * so callers that copy the list once, like {@link ArticleAdapter#submitList(List)}, work as before.
+ * <p/>
+ * Bytes per article, for a typical result with a 70 character title, 95 character URL and
+ * 85 character thumbnail URL, on a 64-bit VM with 4 byte references and 2 byte chars:
+ * <ul>
+ * <li>{@link Article} with its own title, contributor, section, date and URL Strings: about 880</li>
+ * <li>{@link Article} with a long date and shared section and contributor Strings: about 680</li>
+ * <li>{@link CompactArticleList}: about 280, of which 250 are the text of the title and URLs</li>
+ * </ul>
+ */
+public final class CompactArticleList extends AbstractList<Article> implements RandomAccess {
+
+    /** Encoding of the title, URL and thumbnail URL **/
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Number of text values of each article: title, URL and thumbnail URL **/
+    private static final int TEXTS_PER_ARTICLE = 3;
+
+    /** Ids of the contributor, section and section id of each article in the dictionary **/
+    private final int[] mContributorIds;
+    private final int[] mSectionIds;
+    private final int[] mSectionPathIds;
+
+    /** Publication time of each article in milliseconds since the epoch **/
+    private final long[] mPublishedAt;
+
+    /** Title, URL and thumbnail URL of every article, one after the other **/
+    private final byte[] mText;
+
+    /** Start of every text value in {@link #mText}, followed by the end of the last one **/
+    private final int[] mTextOffsets;
+
+    /** Dictionary holding the sections and contributors **/
+    private final StringDictionary mDictionary;
+
+    private CompactArticleList(int size, byte[] text, int[] textOffsets, StringDictionary dictionary) {
+        mContributorIds = new int[size];
+        mSectionIds = new int[size];
+        mSectionPathIds = new int[size];
+        mPublishedAt = new long[size];
+        mText = text;
+        mTextOffsets = textOffsets;
+        mDictionary = dictionary;
+    }
+
+    /**
+     * Returns a compact copy of the articles, or the list itself if it is already compact.
+     * A null thumbnail URL is kept as an empty String.
+     */
+    public static CompactArticleList copyOf(List<Article> articles) {
+        if (articles instanceof CompactArticleList) {
+            return (CompactArticleList) articles;
+        }
+        int size = articles.size();
+
+        // Encodes the text values first, so the shared array is allocated at its final size.
+        byte[][] encoded = new byte[size * TEXTS_PER_ARTICLE][];
+        int[] textOffsets = new int[encoded.length + 1];
+        for (int i = 0; i < size; i++) {
+            Article article = articles.get(i);
+            encoded[i * TEXTS_PER_ARTICLE] = encode(article.getTitle());
+            encoded[i * TEXTS_PER_ARTICLE + 1] = encode(article.getUrl());
+            encoded[i * TEXTS_PER_ARTICLE + 2] = encode(article.getThumbnailUrl());
+        }
+        for (int i = 0; i < encoded.length; i++) {
+            textOffsets[i + 1] = textOffsets[i] + encoded[i].length;
+        }
+        byte[] text = new byte[textOffsets[encoded.length]];
+        for (int i = 0; i < encoded.length; i++) {
+            System.arraycopy(encoded[i], 0, text, textOffsets[i], encoded[i].length);
+        }
+
+        StringDictionary dictionary = StringDictionary.getShared();
+        CompactArticleList list = new CompactArticleList(size, text, textOffsets, dictionary);
+        for (int i = 0; i < size; i++) {
+            Article article = articles.get(i);
+            list.mContributorIds[i] = dictionary.idOf(article.getContributor());
+            list.mSectionIds[i] = dictionary.idOf(article.getSection());
+            list.mSectionPathIds[i] = dictionary.idOf(article.getSectionId());
+            list.mPublishedAt[i] = article.getPublishedAt();
+        }
+        return list;
+    }
+
+    /**
+     * Returns a new {@link Article} holding the values of the position. Its section and
+     * contributor are the instances held by the dictionary.
+     */
+    @Override
+    public Article get(int position) {
+        int text = position * TEXTS_PER_ARTICLE;
+        return new Article(decode(text), mDictionary.get(mContributorIds[position]),
+                mDictionary.get(mSectionIds[position]), mDictionary.get(mSectionPathIds[position]),
+                mPublishedAt[position], decode(text + 1), decode(text + 2));
+    }
+
+    @Override
+    public int size() {
+        return mPublishedAt.length;
+    }
+
+    /**
+     * Returns the number of bytes held by the text of the list.
+     */
+    public int textBytes() {
+        return mText.length;
+    }
+
+    private String decode(int index) {
+        int start = mTextOffsets[index];
+        return new String(mText, start, mTextOffsets[index + 1] - start, UTF_8);
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? new byte[0] : value.getBytes(UTF_8);
+    }
+}
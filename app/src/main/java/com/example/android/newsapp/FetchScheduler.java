@@ -0,0 +1,286 @@
+package com.example.android.newsapp;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link FetchScheduler} runs every network fetch of the app on a bounded pool of worker threads
+ * per resource, one for the Guardian API and one for images, in the order of their priority class:
+ * content the user is looking at first, then images near the viewport, then prefetches, then the
+ * background sync. Fetches of the same class run in the order they were scheduled.
+ * <p/>
+ * One worker of each pool only runs visible fetches, so a visible fetch never waits behind
+ * background work: at worst it waits for another visible fetch. Every scheduled fetch returns a
+ * {@link Token} that drops it if it has not started yet, or raises its priority while it waits.
+ * The number of fetches left waiting each time a fetch is scheduled, and the time each fetch waited
+ * for a worker by priority class, are recorded in the {@link PipelineMetrics}.
+ */
+public class FetchScheduler {
+
+    /** Priority classes, most urgent first **/
+    public static final int PRIORITY_VISIBLE = 0;
+    public static final int PRIORITY_NEAR_VIEWPORT = 1;
+    public static final int PRIORITY_PREFETCH = 2;
+    public static final int PRIORITY_SYNC = 3;
+
+    /** Resources with a worker pool of their own **/
+    public static final int API = 0;
+    public static final int IMAGES = 1;
+
+    /** Default number of workers of each pool, including the one kept for visible fetches **/
+    public static final int DEFAULT_API_WORKERS = 4;
+    public static final int DEFAULT_IMAGE_WORKERS = 4;
+
+    /** Seconds an idle worker thread is kept alive before it is released **/
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /** Names of the resources and priority classes in the metric names **/
+    private static final String[] RESOURCE_NAMES = {"api", "images"};
+    private static final String[] PRIORITY_NAMES = {"visible", "near_viewport", "prefetch", "sync"};
+
+    /** The scheduler shared by the whole app **/
+    private static final FetchScheduler sInstance =
+            new FetchScheduler(DEFAULT_API_WORKERS, DEFAULT_IMAGE_WORKERS, PipelineMetrics.getInstance());
+
+    /** Pools by resource **/
+    private final Pool[] mPools;
+
+    /** Records the queue depths and wait times **/
+    private final PipelineMetrics mMetrics;
+
+    /** Order in which the fetches were scheduled, to run fetches of the same class first come first served **/
+    private final AtomicInteger mSequence = new AtomicInteger();
+
+    /**
+     * Lets the owner of a scheduled fetch drop it or change its priority while it waits.
+     */
+    public static class Token implements Comparable<Token> {
+        private final Pool mPool;
+        private final Runnable mFetch;
+        private final int mSequence;
+        private final long mScheduledNanos = System.nanoTime();
+        private int mPriority;
+        private boolean mStarted;
+        private boolean mCancelled;
+
+        private Token(Pool pool, Runnable fetch, int priority, int sequence) {
+            mPool = pool;
+            mFetch = fetch;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        /**
+         * Drops the fetch if it has not started yet.
+         *
+         * @return true if the fetch was dropped, false if it has already started
+         */
+        public boolean cancel() {
+            synchronized (mPool) {
+                if (mStarted) {
+                    return false;
+                }
+                if (!mCancelled) {
+                    mCancelled = true;
+                    mPool.mQueue.remove(this);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Raises the priority of the fetch if it has not started yet, such as when a prefetched
+         * image scrolls into view. A lower priority is ignored.
+         */
+        public void raisePriority(int priority) {
+            synchronized (mPool) {
+                if (mStarted || mCancelled || priority >= mPriority) {
+                    return;
+                }
+                mPool.mQueue.remove(this);
+                mPriority = priority;
+                mPool.mQueue.add(this);
+                mPool.dispatch();
+            }
+        }
+
+        /** Returns true if the fetch was dropped before it started **/
+        public boolean isCancelled() {
+            synchronized (mPool) {
+                return mCancelled;
+            }
+        }
+
+        @Override
+        public int compareTo(Token other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    /**
+     * Returns the scheduler shared by the whole app.
+     */
+    public static FetchScheduler getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Create a {@link FetchScheduler}.
+     *
+     * @param apiWorkers number of Guardian API requests sent at the same time, at least 2
+     * @param imageWorkers number of images downloaded at the same time, at least 2
+     * @param metrics that record the queue depths and wait times
+     */
+    FetchScheduler(int apiWorkers, int imageWorkers, PipelineMetrics metrics) {
+        mMetrics = metrics;
+        mPools = new Pool[]{new Pool(API, apiWorkers), new Pool(IMAGES, imageWorkers)};
+    }
+
+    /**
+     * Queues a fetch on the pool of a resource. It runs as soon as a worker is free for its
+     * priority class and no more urgent fetch is waiting.
+     *
+     * @param resource {@link #API} or {@link #IMAGES}
+     * @param priority class of the fetch, such as {@link #PRIORITY_VISIBLE}
+     * @param fetch that performs the request on a worker thread
+     * @return the token of the fetch
+     */
+    public Token execute(int resource, int priority, Runnable fetch) {
+        if (priority < PRIORITY_VISIBLE || priority > PRIORITY_SYNC) {
+            throw new IllegalArgumentException("Unknown priority: " + priority);
+        }
+        Pool pool = mPools[resource];
+        Token token = new Token(pool, fetch, priority, mSequence.getAndIncrement());
+        int depth;
+        synchronized (pool) {
+            pool.mQueue.add(token);
+            pool.dispatch();
+            depth = pool.mQueue.size();
+        }
+        mMetrics.record(PipelineMetrics.SCHEDULER + "." + RESOURCE_NAMES[resource] + ".depth", depth);
+        return token;
+    }
+
+    /** Get the number of fetches of a resource waiting for a worker **/
+    public int getQueueDepth(int resource) {
+        Pool pool = mPools[resource];
+        synchronized (pool) {
+            return pool.mQueue.size();
+        }
+    }
+
+    /** Get the number of fetches of a resource running **/
+    public int getRunningCount(int resource) {
+        Pool pool = mPools[resource];
+        synchronized (pool) {
+            return pool.mRunning;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FetchScheduler[apiRunning=" + getRunningCount(API) + ", apiQueued=" + getQueueDepth(API)
+                + ", imagesRunning=" + getRunningCount(IMAGES) + ", imagesQueued=" + getQueueDepth(IMAGES) + "]";
+    }
+
+    /**
+     * The workers of one resource and the fetches waiting for them, most urgent first. Worker
+     * threads are created when needed and released when idle; the pool only limits how many
+     * fetches run at the same time.
+     */
+    private class Pool {
+        private final int mResource;
+        private final int mMaxRunning;
+        private final PriorityQueue<Token> mQueue = new PriorityQueue<>();
+        private final ExecutorService mThreads;
+
+        /** Numbers of fetches running, and of those that are not visible **/
+        private int mRunning;
+        private int mRunningBackground;
+
+        private Pool(int resource, int maxRunning) {
+            if (maxRunning < 2) {
+                throw new IllegalArgumentException("A pool needs at least 2 workers: " + maxRunning);
+            }
+            mResource = resource;
+            mMaxRunning = maxRunning;
+            // Not bounded itself: a worker starts the next fetch before its thread is idle again.
+            mThreads = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new WorkerThreadFactory(RESOURCE_NAMES[resource]));
+        }
+
+        /**
+         * Starts the most urgent waiting fetches while workers are free for them. The last free
+         * worker is kept for visible fetches. Must be called while holding the pool lock.
+         */
+        private void dispatch() {
+            while (mRunning < mMaxRunning && !mQueue.isEmpty()) {
+                final Token token = mQueue.peek();
+                final boolean background = token.mPriority != PRIORITY_VISIBLE;
+                if (background && mRunningBackground >= mMaxRunning - 1) {
+                    return;
+                }
+                mQueue.poll();
+                token.mStarted = true;
+                mRunning++;
+                if (background) {
+                    mRunningBackground++;
+                }
+                mMetrics.recordSince(PipelineMetrics.SCHEDULER + "." + RESOURCE_NAMES[mResource] + ".wait."
+                        + PRIORITY_NAMES[token.mPriority], token.mScheduledNanos);
+                mThreads.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runFetch(token, background);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Runs a fetch on a worker thread and starts the next waiting fetch when it is done.
+         * Only visible API fetches run at normal thread priority, so image decoding and
+         * background work do not compete with the UI thread.
+         */
+        private void runFetch(Token token, boolean background) {
+            boolean lowPriority = background || mResource == IMAGES;
+            Thread.currentThread().setPriority(lowPriority ? Thread.MIN_PRIORITY : Thread.NORM_PRIORITY);
+            try {
+                token.mFetch.run();
+            } finally {
+                synchronized (this) {
+                    mRunning--;
+                    if (background) {
+                        mRunningBackground--;
+                    }
+                    dispatch();
+                }
+            }
+        }
+    }
+
+    /**
+     * Names the worker threads of a pool.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final String mName;
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        private WorkerThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "Fetch " + mName + " #" + mCount.getAndIncrement());
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package com.example.android.newsapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link HttpTransport} sends the GET requests of the app, for both the Guardian API and the
+ * thumbnails, so every request shares the same connection pool, compression and timeouts.
+ * <p/>
+ * Connections are kept alive and returned to the pool of {@link HttpURLConnection} when a
+ * {@link Response} is closed: its body is read to the end and the connection is not disconnected.
+ * Every request asks for a gzip response, which is decompressed transparently. Statistics are
+ * kept for each host, see {@link #getHostStats()}, and each {@link Response} times its connect,
+ * first byte and body stages, see {@link PipelineMetrics#recordResponse}.
+ * Reference: https://developer.android.com/reference/java/net/HttpURLConnection
+ */
+public class HttpTransport {
+
+    /** Default connect and read timeouts in milliseconds **/
+    public static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+    public static final int DEFAULT_READ_TIMEOUT = 10000;
+
+    /** Maximum number of idle connections kept alive for each host **/
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    /** Maximum number of unread body bytes read so a closed connection can be reused **/
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    /** The transport shared by the whole app **/
+    private static final HttpTransport sInstance = new HttpTransport();
+
+    /** Timeouts of requests that do not set their own **/
+    private volatile int mConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile int mReadTimeout = DEFAULT_READ_TIMEOUT;
+
+    /** Statistics by host name **/
+    private final Map<String, HostStats> mHostStats = new TreeMap<>();
+
+    /** Body bytes received before decompression by the responses closed on each thread **/
+    private static final ThreadLocal<long[]> sThreadWireBytes = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /**
+     * Returns the transport shared by the whole app.
+     */
+    public static HttpTransport getInstance() {
+        return sInstance;
+    }
+
+    private HttpTransport() {
+        // The pool of HttpURLConnection is configured through system properties.
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+    }
+
+    /**
+     * Sets the timeouts in milliseconds of requests that do not set their own.
+     */
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    /**
+     * Sends a GET request with the default timeouts.
+     *
+     * @param url of the request
+     * @param headers added to the request, or null
+     * @return the response, which must be closed
+     */
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        return get(url, headers, mConnectTimeout, mReadTimeout);
+    }
+
+    /**
+     * Sends a GET request.
+     *
+     * @param url of the request
+     * @param headers added to the request, or null
+     * @param connectTimeout in milliseconds
+     * @param readTimeout in milliseconds
+     * @return the response, which must be closed
+     */
+    public Response get(URL url, Map<String, String> headers, int connectTimeout, int readTimeout)
+            throws IOException {
+        HostStats stats = statsFor(url.getHost());
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setRequestMethod("GET");
+        urlConnection.setConnectTimeout(connectTimeout);
+        urlConnection.setReadTimeout(readTimeout);
+        // Asking for gzip explicitly turns off the decompression of HttpURLConnection, so the
+        // compressed size can be counted before the body is decompressed here.
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                urlConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
+        long startTime = System.currentTimeMillis();
+        stats.onRequestStarted();
+        try {
+            // Connecting resolves the host and opens the socket, or reuses a pooled connection.
+            long connectStart = System.nanoTime();
+            urlConnection.connect();
+            long connectEnd = System.nanoTime();
+            int responseCode = urlConnection.getResponseCode();
+            long firstByteMicros = (System.nanoTime() - connectEnd) / 1000;
+            return new Response(urlConnection, responseCode, stats, startTime,
+                    (connectEnd - connectStart) / 1000, firstByteMicros);
+        } catch (IOException e) {
+            stats.onRequestFinished(false, 0, 0, System.currentTimeMillis() - startTime);
+            urlConnection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics of every host, by host name.
+     */
+    public Map<String, HostStats> getHostStats() {
+        Map<String, HostStats> snapshot = new TreeMap<>();
+        synchronized (mHostStats) {
+            for (Map.Entry<String, HostStats> entry : mHostStats.entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().copy());
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of body bytes received before decompression by the responses closed on
+     * the calling thread, so a caller can measure the requests it sent itself.
+     */
+    public static long getThreadWireBytes() {
+        return sThreadWireBytes.get()[0];
+    }
+
+    /**
+     * Counts bytes that another thread received on behalf of the calling thread, such as a
+     * request that {@link RequestCoalescer} sent for it.
+     */
+    static void addThreadWireBytes(long wireBytes) {
+        sThreadWireBytes.get()[0] += wireBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpTransport" + getHostStats().values();
+    }
+
+    private HostStats statsFor(String host) {
+        synchronized (mHostStats) {
+            HostStats stats = mHostStats.get(host);
+            if (stats == null) {
+                stats = new HostStats(host);
+                mHostStats.put(host, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * A response whose status and headers have been received. Closing it reads the rest of the
+     * body, so the connection can be reused, and {@link #abort()} closes the connection instead.
+     */
+    public static class Response implements Closeable {
+        private final HttpURLConnection mConnection;
+        private final int mResponseCode;
+        private final HostStats mStats;
+        private final long mStartTime;
+
+        /** Time in microseconds spent connecting, and from then until the status was received **/
+        private final long mConnectMicros;
+        private final long mFirstByteMicros;
+
+        /** Counts the compressed bytes of the body, or null until the body is opened **/
+        private CountingInputStream mWireStream;
+
+        /** Decompressed body, or null until it is opened **/
+        private CountingInputStream mBody;
+
+        private boolean mClosed;
+
+        private Response(HttpURLConnection connection, int responseCode, HostStats stats, long startTime,
+                         long connectMicros, long firstByteMicros) {
+            mConnection = connection;
+            mResponseCode = responseCode;
+            mStats = stats;
+            mStartTime = startTime;
+            mConnectMicros = connectMicros;
+            mFirstByteMicros = firstByteMicros;
+        }
+
+        /** Get the HTTP status code **/
+        public int getResponseCode() {
+            return mResponseCode;
+        }
+
+        /** Get the value of a response header, or null if it was not sent **/
+        public String getHeaderField(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /** Get the number of body bytes received so far, before decompression **/
+        public synchronized long getWireBytes() {
+            return mWireStream != null ? mWireStream.mCount : 0;
+        }
+
+        /** Get the time in microseconds spent resolving the host and connecting, 0 for a pooled connection **/
+        public long getConnectMicros() {
+            return mConnectMicros;
+        }
+
+        /** Get the time in microseconds from connecting until the status was received **/
+        public long getFirstByteMicros() {
+            return mFirstByteMicros;
+        }
+
+        /**
+         * Get the time in microseconds spent waiting for body bytes from the network so far, not
+         * counting the time the caller spent between reads, such as parsing them.
+         */
+        public synchronized long getBodyReadMicros() {
+            return mWireStream != null ? mWireStream.mReadNanos / 1000 : 0;
+        }
+
+        /**
+         * Returns the decompressed body. For an error status this is the error body, which may be empty.
+         */
+        public synchronized InputStream getBody() throws IOException {
+            if (mBody == null) {
+                InputStream stream = mResponseCode < HttpURLConnection.HTTP_BAD_REQUEST
+                        ? mConnection.getInputStream() : mConnection.getErrorStream();
+                mWireStream = new CountingInputStream(stream != null ? stream : new EmptyInputStream());
+                InputStream decoded = "gzip".equalsIgnoreCase(mConnection.getHeaderField("Content-Encoding"))
+                        ? new GZIPInputStream(mWireStream) : mWireStream;
+                mBody = new CountingInputStream(decoded);
+            }
+            return mBody;
+        }
+
+        /**
+         * Reads the whole decompressed body.
+         */
+        public byte[] readBody() throws IOException {
+            InputStream body = getBody();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = body.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        }
+
+        /**
+         * Reads the rest of a small body and closes it, so the connection returns to the pool.
+         */
+        @Override
+        public synchronized void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            boolean reusable = false;
+            try {
+                InputStream body = getBody();
+                byte[] buffer = new byte[8192];
+                int drained = 0;
+                int count;
+                while (drained < MAX_DRAIN_BYTES && (count = body.read(buffer)) != -1) {
+                    drained += count;
+                }
+                reusable = drained < MAX_DRAIN_BYTES;
+                body.close();
+            } catch (IOException e) {
+                // The connection cannot be reused, so it is closed below.
+            }
+            if (!reusable) {
+                mConnection.disconnect();
+            }
+            finish(true);
+        }
+
+        /**
+         * Closes the connection without reading the rest of the body, such as when the request
+         * is cancelled. Unlike interrupting the thread, this also stops a blocking read.
+         */
+        public void abort() {
+            mConnection.disconnect();
+            synchronized (this) {
+                if (!mClosed) {
+                    mClosed = true;
+                    finish(false);
+                }
+            }
+        }
+
+        private void finish(boolean succeeded) {
+            long wireBytes = mWireStream != null ? mWireStream.mCount : 0;
+            sThreadWireBytes.get()[0] += wireBytes;
+            mStats.onRequestFinished(succeeded, wireBytes,
+                    mBody != null ? mBody.mCount : 0,
+                    System.currentTimeMillis() - mStartTime);
+        }
+    }
+
+    /**
+     * Request statistics of a single host.
+     */
+    public static class HostStats {
+        private final String mHost;
+        private int mRequestCount;
+        private int mFailureCount;
+        private int mActiveCount;
+        private int mPeakActiveCount;
+        private long mWireBytes;
+        private long mDecodedBytes;
+        private long mTotalMillis;
+
+        private HostStats(String host) {
+            mHost = host;
+        }
+
+        /** Get the host name **/
+        public String getHost() {
+            return mHost;
+        }
+
+        /** Get the number of requests sent **/
+        public synchronized int getRequestCount() {
+            return mRequestCount;
+        }
+
+        /** Get the number of requests that failed or were aborted **/
+        public synchronized int getFailureCount() {
+            return mFailureCount;
+        }
+
+        /** Get the number of connections in use **/
+        public synchronized int getActiveCount() {
+            return mActiveCount;
+        }
+
+        /** Get the largest number of connections in use at the same time **/
+        public synchronized int getPeakActiveCount() {
+            return mPeakActiveCount;
+        }
+
+        /** Get the number of body bytes received, before decompression **/
+        public synchronized long getWireBytes() {
+            return mWireBytes;
+        }
+
+        /** Get the number of body bytes after decompression **/
+        public synchronized long getDecodedBytes() {
+            return mDecodedBytes;
+        }
+
+        /** Get the total time in milliseconds from sending requests until their responses were closed **/
+        public synchronized long getTotalMillis() {
+            return mTotalMillis;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return mHost + "[requests=" + mRequestCount + ", failures=" + mFailureCount
+                    + ", active=" + mActiveCount + ", peakActive=" + mPeakActiveCount
+                    + ", wireBytes=" + mWireBytes + ", decodedBytes=" + mDecodedBytes
+                    + ", totalMillis=" + mTotalMillis + "]";
+        }
+
+        private synchronized void onRequestStarted() {
+            mRequestCount++;
+            mActiveCount++;
+            mPeakActiveCount = Math.max(mPeakActiveCount, mActiveCount);
+        }
+
+        private synchronized void onRequestFinished(boolean succeeded, long wireBytes, long decodedBytes,
+                                                    long millis) {
+            mActiveCount--;
+            if (!succeeded) {
+                mFailureCount++;
+            }
+            mWireBytes += wireBytes;
+            mDecodedBytes += decodedBytes;
+            mTotalMillis += millis;
+        }
+
+        private synchronized HostStats copy() {
+            HostStats copy = new HostStats(mHost);
+            copy.mRequestCount = mRequestCount;
+            copy.mFailureCount = mFailureCount;
+            copy.mActiveCount = mActiveCount;
+            copy.mPeakActiveCount = mPeakActiveCount;
+            copy.mWireBytes = mWireBytes;
+            copy.mDecodedBytes = mDecodedBytes;
+            copy.mTotalMillis = mTotalMillis;
+            return copy;
+        }
+    }
+
+    /**
+     * Counts the bytes read from a stream and the time spent reading them.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private volatile long mCount;
+        private volatile long mReadNanos;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            mReadNanos += System.nanoTime() - start;
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int count = super.read(buffer, offset, length);
+            mReadNanos += System.nanoTime() - start;
+            if (count > 0) {
+                mCount += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Body of a response that has none.
+     */
+    private static class EmptyInputStream extends InputStream {
+        @Override
+        public int read() {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.android.newsapp;
+
+/**
+ * {@link LatencyHistogram} counts values, such as durations in microseconds or sizes in bytes,
+ * in a fixed set of buckets, so recording a value is cheap and does not allocate, and the
+ * percentiles can be read at any time.
+ * <p/>
+ * Values are bucketed log-linearly: each power of two is split into {@link #SUB_BUCKETS} equal
+ * buckets, so a percentile is within 1/{@link #SUB_BUCKETS} of the recorded value, whatever its
+ * magnitude. Negative values are counted as 0.
+ * Reference: https://hdrhistogram.github.io/HdrHistogram/
+ */
+public class LatencyHistogram {
+
+    /** Buckets within each power of two **/
+    static final int SUB_BUCKETS = 8;
+
+    /** Number of bits of the sub-bucket index **/
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** Values below SUB_BUCKETS have a bucket each, then one row of buckets per power of two **/
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final int[] mCounts = new int[BUCKET_COUNT];
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+    /**
+     * Counts a value.
+     */
+    public synchronized void record(long value) {
+        value = Math.max(0, value);
+        mCounts[bucketOf(value)]++;
+        mCount++;
+        mSum += value;
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * Adds the values counted by another histogram.
+     */
+    public synchronized void add(LatencyHistogram other) {
+        synchronized (other) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mCounts[i] += other.mCounts[i];
+            }
+            mCount += other.mCount;
+            mSum += other.mSum;
+            mMax = Math.max(mMax, other.mMax);
+        }
+    }
+
+    /**
+     * Forgets every value.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    /**
+     * Returns the value below which the fraction of the values fall, such as 0.95 for the 95th
+     * percentile, or 0 if no value was counted. The value is the middle of its bucket, and never
+     * more than the largest value counted.
+     */
+    public synchronized long getPercentile(double fraction) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * mCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(mMax, (lowestValueOf(i) + highestValueOf(i)) / 2);
+            }
+        }
+        return mMax;
+    }
+
+    /** Get the number of values counted **/
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /** Get the largest value counted **/
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /** Get the mean of the values counted, or 0 if there are none **/
+    public synchronized long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LatencyHistogram[count=" + mCount + ", p50=" + getPercentile(0.5)
+                + ", p95=" + getPercentile(0.95) + ", p99=" + getPercentile(0.99) + ", max=" + mMax + "]";
+    }
+
+    /**
+     * Returns the bucket of a value that is not negative.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // The highest bit selects the row and the next bits the bucket within it.
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return lowestValueOf(bucket) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.android.newsapp;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link LiveSearch} turns the text typed into the search field into Guardian API queries.
+ * <p/>
+ * Keystrokes are debounced: a query is only sent once the text has not changed for the debounce
+ * time, or right away when the user submits it, so typing a word sends one or two requests
+ * instead of one per letter. Sending a new query restarts the loader, which cancels the query
+ * still in progress. Meanwhile, every keystroke is answered locally by filtering the results of
+ * the longest earlier query that the text starts with, such as the results of "clim" for "climate".
+ */
+public class LiveSearch {
+
+    /**
+     * Receives the local results and the queries to send.
+     */
+    public interface Callback {
+        /** Displays the results filtered locally for the text while its query is sent **/
+        void onLocalResults(String query, List<Article> articles);
+
+        /** Sends the query, or returns to the articles of the section for an empty query **/
+        void onSearch(String query);
+    }
+
+    /**
+     * Returns the results of an earlier query.
+     */
+    public interface ResultLookup {
+        /** Returns the results of the query if they are known, or null **/
+        List<Article> resultsFor(String query);
+    }
+
+    /** Posts the debounced queries **/
+    private final Handler mHandler;
+
+    /** Time in milliseconds the text must stay unchanged before its query is sent **/
+    private final long mDebounceMillis;
+
+    private final Callback mCallback;
+    private final ResultLookup mResultLookup;
+
+    /** Query waiting for the debounce time, and the last query sent, empty for no search **/
+    private String mPendingQuery;
+    private String mSentQuery = "";
+
+    /** Number of queries sent **/
+    private int mSearchCount;
+
+    /** Sends the pending query once the debounce time has passed **/
+    private final Runnable mSendPendingQuery = new Runnable() {
+        @Override
+        public void run() {
+            send(mPendingQuery);
+        }
+    };
+
+    /**
+     * Create a {@link LiveSearch}.
+     *
+     * @param handler of the main thread
+     * @param debounceMillis time the text must stay unchanged before its query is sent
+     * @param callback that displays the results and sends the queries
+     * @param resultLookup that returns the results of earlier queries
+     */
+    public LiveSearch(Handler handler, long debounceMillis, Callback callback, ResultLookup resultLookup) {
+        mHandler = handler;
+        mDebounceMillis = debounceMillis;
+        mCallback = callback;
+        mResultLookup = resultLookup;
+    }
+
+    /**
+     * Filters the results of an earlier query for the text right away and sends its query once
+     * the text has stopped changing.
+     */
+    public void onQueryChanged(String text) {
+        String query = normalize(text);
+        mHandler.removeCallbacks(mSendPendingQuery);
+        if (query.equals(mSentQuery)) {
+            mPendingQuery = null;
+            return;
+        }
+        List<Article> localResults = localResults(query, mResultLookup);
+        if (localResults != null) {
+            mCallback.onLocalResults(query, localResults);
+        }
+        mPendingQuery = query;
+        mHandler.postDelayed(mSendPendingQuery, mDebounceMillis);
+    }
+
+    /**
+     * Sends the query of the text right away, such as when the user presses the search key.
+     */
+    public void onQuerySubmitted(String text) {
+        mHandler.removeCallbacks(mSendPendingQuery);
+        send(normalize(text));
+    }
+
+    /**
+     * Drops the query waiting for the debounce time and forgets the last query sent, such as when
+     * the search field is closed.
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(mSendPendingQuery);
+        mPendingQuery = null;
+        mSentQuery = "";
+    }
+
+    /** Get the number of queries sent **/
+    public int getSearchCount() {
+        return mSearchCount;
+    }
+
+    private void send(String query) {
+        mPendingQuery = null;
+        if (query == null || query.equals(mSentQuery)) {
+            return;
+        }
+        mSentQuery = query;
+        mSearchCount++;
+        mCallback.onSearch(query);
+    }
+
+    /**
+     * Returns the articles of the longest known query that the query starts with, filtered for
+     * the query, or null if no such query is known. The query's own results are returned as they
+     * are.
+     */
+    static List<Article> localResults(String query, ResultLookup resultLookup) {
+        for (int length = query.length(); length > 0; length--) {
+            List<Article> results = resultLookup.resultsFor(query.substring(0, length).trim());
+            if (results != null) {
+                return length == query.length() ? results : filter(results, query);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the articles whose title, contributor or section contain a word starting with each
+     * word of the query, in their order.
+     */
+    static List<Article> filter(List<Article> articles, String query) {
+        String[] words = query.split("\\s+");
+        List<Article> matches = new ArrayList<>();
+        for (Article article : articles) {
+            String contributor = article.getContributor() != null ? article.getContributor() : "";
+            String text = (article.getTitle() + ' ' + contributor + ' '
+                    + article.getSection()).toLowerCase(Locale.ENGLISH);
+            boolean matchesAll = true;
+            for (String word : words) {
+                if (!word.isEmpty() && !containsWordStartingWith(text, word)) {
+                    matchesAll = false;
+                    break;
+                }
+            }
+            if (matchesAll) {
+                matches.add(article);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the text as a query: lower case, trimmed and with single spaces between words.
+     */
+    static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ENGLISH).replaceAll("\\s+", " ");
+    }
+
+    private static boolean containsWordStartingWith(String text, String word) {
+        for (int index = text.indexOf(word); index >= 0; index = text.indexOf(word, index + 1)) {
+            if (index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
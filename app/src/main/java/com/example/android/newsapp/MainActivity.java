@@ -3,24 +3,29 @@ package com.example.android.newsapp;
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.support.design.widget.NavigationView;
 import android.support.v4.view.GravityCompat;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v4.widget.DrawerLayout;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.ActionBar;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.ImageView;
@@ -35,7 +40,7 @@ import java.util.List;
  * Title, contributor, section, date and thumbnail image are displayed for each item.
  * Clicking an item will open an implicit intent to view the article in a web browser.
  *
- * NOTE: Place your API key in the onCreateLoader method.
+ * NOTE: Place your API key in the buildQueryUrl method.
  *
  * Icons courtesy of Material Icons: https://material.io/tools/icons/?style=baseline
  * Reference for Navigation Drawer: https://developer.android.com/training/implementing-navigation/nav-drawer
@@ -46,10 +51,6 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
     /** Log messages tag **/
     private static final String LOG_TAG = MainActivity.class.getName();
 
-    /** URL Strings for news article data from the Guardian **/
-    private static final String SCHEME = "https";
-    private static final String AUTHORITY = "content.guardianapis.com";
-
     /** String that holds sections listed in Navigation Drawer, initialized to default data **/
     private static String navSection = "us-news";
 
@@ -59,6 +60,15 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
     /** Static value for the article loader ID **/
     private static final int ARTICLE_LOADER_ID = 1;
 
+    /** Static value for the loader ID of the pages loaded while scrolling **/
+    private static final int PAGE_LOADER_ID = 2;
+
+    /** Bundle key of the page loaded by the page loader **/
+    private static final String ARG_PAGE = "page";
+
+    /** SharedPreferences holding the number of API requests of the day **/
+    private static final String API_QUOTA_PREFERENCES = "api_quota";
+
     /** SwipeRefreshLayout for pulling top of screen to refresh data **/
     private SwipeRefreshLayout swipeRefreshLayout;
 
@@ -72,11 +82,108 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
     /** ProgressBar displayed while loading data **/
     private ProgressBar mProgressBar;
 
+    /** True while there is no network connection and only stored articles are displayed **/
+    private boolean mOffline;
+
+    /** Number of articles requested per page **/
+    private int mPageSize;
+
+    /** Page being loaded by the page loader, or 0 if none is loading **/
+    private int mLoadingPage;
+
+    /** True until the first page has been loaded completely **/
+    private boolean mFirstPageLoading;
+
+    /** True once a page with fewer articles than the page size has been loaded **/
+    private boolean mLastPageReached;
+
+    /** Maximum number of pages held by the adapter **/
+    private int mMaxPagesInMemory;
+
+    /** Prefetches the sections the user is likely to open next **/
+    private SectionPrefetcher mSectionPrefetcher;
+
+    /** True if the next load must revalidate a cached response, such as after swipe-to-refresh **/
+    private boolean mForceRevalidate;
+
+    /** True if the next load only requests the articles newer than those displayed **/
+    private boolean mIncrementalRefresh;
+
+    /** Turns the text typed into the search field into queries **/
+    private LiveSearch mLiveSearch;
+
+    /** Query of the live search, which replaces the keyword preference, or empty if none **/
+    private String mSearchQuery = "";
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        // Sets how long a cached response is displayed right away while it is revalidated.
+        ArticleResponseCache.getInstance().setStaleWhileRevalidateMillis(
+                getResources().getInteger(R.integer.stale_while_revalidate_seconds) * 1000L);
+        ArticleResponseCache.getInstance().setRefreshInBackground(
+                getResources().getBoolean(R.bool.refresh_cached_sections));
+
+        // Sets the timeouts of requests to the Guardian API.
+        HttpTransport.getInstance().setTimeouts(
+                getResources().getInteger(R.integer.http_connect_timeout_millis),
+                getResources().getInteger(R.integer.http_read_timeout_millis));
+
+        // Keeps requests to the Guardian API within the quota of the API key.
+        ApiRateLimiter.getInstance().setQuota(
+                getResources().getInteger(R.integer.api_max_requests_per_second),
+                getResources().getInteger(R.integer.api_max_requests_per_day));
+        ApiRateLimiter.getInstance().setPreferences(getSharedPreferences(API_QUOTA_PREFERENCES, MODE_PRIVATE));
+
+        // Learns which sections the user opens, to prefetch the likely next ones.
+        mSectionPrefetcher = new SectionPrefetcher(this,
+                getResources().getInteger(R.integer.prefetch_section_count),
+                getResources().getInteger(R.integer.prefetch_max_requests_per_hour),
+                getResources().getInteger(R.integer.prefetch_max_kilobytes_per_hour) * 1024L);
+        if (savedInstanceState == null) {
+            onSectionOpened();
+        }
+
+        // Keeps the most used sections synced in the background while the device allows it.
+        SectionSyncService.schedule(this);
+
+        // Searches as the user types, once the text has stopped changing.
+        mLiveSearch = new LiveSearch(new Handler(), getResources().getInteger(R.integer.search_debounce_millis),
+                new LiveSearch.Callback() {
+                    @Override
+                    public void onLocalResults(String query, List<Article> articles) {
+                        showLocalSearchResults(articles);
+                    }
+
+                    @Override
+                    public void onSearch(String query) {
+                        search(query);
+                    }
+                },
+                new LiveSearch.ResultLookup() {
+                    /** Last cached response looked up, and its articles decoded once **/
+                    private ArticleResponseCache.Entry mLastEntry;
+                    private List<Article> mLastResults;
+
+                    @Override
+                    public List<Article> resultsFor(String query) {
+                        ArticleResponseCache.Entry cached = ArticleResponseCache.getInstance().get(
+                                ArticleResponseCache.keyFor(buildQueryUrl(navSection, 1, query)));
+                        if (cached == null) {
+                            return null;
+                        }
+                        // The cached articles are compact and decode a new Article on every get,
+                        // so they are copied once and reused while the user keeps typing.
+                        if (cached != mLastEntry) {
+                            mLastEntry = cached;
+                            mLastResults = new ArrayList<>(cached.getArticles());
+                        }
+                        return mLastResults;
+                    }
+                });
+
         // Finds ToolBar and sets as ActionBar
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
@@ -94,6 +201,9 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
         mEmptyState = (TextView) findViewById(R.id.empty_view);
         mEmptyStateImage = (ImageView) findViewById(R.id.empty_view_image);
 
+        // Finds reference to the ProgressBar displayed while the first page loads.
+        mProgressBar = (ProgressBar) findViewById(R.id.progress_bar);
+
         // Finds reference to {@link DrawerLayout} and {@link NavigationView} for Navigation Drawer.
         drawerLayout = (DrawerLayout) findViewById(R.id.drawer_layout);
         NavigationView navigationView = (NavigationView) findViewById(R.id.nav_view);
@@ -112,6 +222,9 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
                         drawerLayout.closeDrawers();
                         // Sets navSection as selected section key
                         switch (menuItem.getItemId()) {
+                            case R.id.top_stories:
+                                navSection = QueryUtils.TOP_STORIES;
+                                break;
                             case R.id.us_news:
                                 navSection = "us-news";
                                 break;
@@ -147,6 +260,9 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
                                 startActivity(settingsIntent);
                                 break;
                         }
+                        if (menuItem.getItemId() != R.id.settings) {
+                            onSectionOpened();
+                        }
                         // Displays ProgressBar while loading data
                         mProgressBar.setVisibility(View.VISIBLE);
                         checkNetwork();
@@ -164,6 +280,27 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
         // Set the adapter on the {@link RecyclerView} to populate user interface.
         articleRecyclerView.setAdapter(mArticleAdapter);
 
+        // Loads the next page when the user scrolls near the end of the list, and a page that
+        // was dropped from memory when the user scrolls back near the start.
+        mMaxPagesInMemory = getResources().getInteger(R.integer.max_pages_in_memory);
+        articleRecyclerView.addOnScrollListener(new PagingScrollListener(linearLayoutManager,
+                getResources().getInteger(R.integer.paging_prefetch_distance),
+                new PagingScrollListener.Callback() {
+                    @Override
+                    public void onNearEnd() {
+                        if (!mLastPageReached) {
+                            loadPage(mArticleAdapter.getLastPage() + 1);
+                        }
+                    }
+
+                    @Override
+                    public void onNearStart() {
+                        if (mArticleAdapter.getFirstPage() > 1) {
+                            loadPage(mArticleAdapter.getFirstPage() - 1);
+                        }
+                    }
+                }));
+
         // Finds reference to SharedPreferences and sets a listener for when changes are made by the user.
         SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
         preferences.registerOnSharedPreferenceChangeListener(this);
@@ -183,15 +320,18 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
         swipeRefreshLayout.setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
             @Override
             public void onRefresh() {
-                // Calls checkNetwork() and sets boolean to false when finished.
+                // A refresh asks the server even if a recent response is cached, and the
+                // indicator is hidden once the load has finished.
                 swipeRefreshLayout.setRefreshing(true);
-                checkNetwork();
-                (new Handler()).postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        swipeRefreshLayout.setRefreshing(false);
-                    }
-                }, 3000);
+                mForceRevalidate = true;
+                if (!mOffline && isConnected() && mArticleAdapter.getItemCount() > 0 && !mFirstPageLoading) {
+                    // Only requests the articles published since the newest one displayed, and
+                    // adds them to the top of the list.
+                    mIncrementalRefresh = true;
+                    getLoaderManager().restartLoader(ARTICLE_LOADER_ID, null, MainActivity.this);
+                } else {
+                    checkNetwork();
+                }
             }
         });
     }
@@ -200,36 +340,52 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
      * Method that handles connecting to network and initializing the Loader.
      */
     private void checkNetwork() {
+        // If there is a connection, retrieve data. Otherwise only the stored articles are loaded.
+        boolean connected = isConnected();
+        boolean connectionChanged = connected == mOffline;
+        mOffline = !connected;
+
+        // Finds reference to the LoaderManager to interact with loader.
+        LoaderManager loaderManager = getLoaderManager();
+        resetPaging();
+
+        if(mArticleAdapter.getItemCount() <= 0 && !connectionChanged) {
+            // Initialize the loader and pass this activity, which contains the LoaderCallbacks interface.
+            loaderManager.initLoader(ARTICLE_LOADER_ID, null, this);
+        } else {
+            showCachedResults();
+            loaderManager.restartLoader(ARTICLE_LOADER_ID, null, this);
+        }
+    }
+
+    /**
+     * Returns true if there is a network connection.
+     */
+    private boolean isConnected() {
         // Finds reference to ConnectivityManager and checks network connectivity state.
         ConnectivityManager connectManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
 
         // Gets details on current active network.
         NetworkInfo networkInfo = connectManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
 
-        // If there is a connection, retrieve data.
-        if (networkInfo != null && networkInfo.isConnected()) {
-            // Finds reference to the LoaderManager to interact with loader.
-            LoaderManager loaderManager = getLoaderManager();
-
-            if(mArticleAdapter.getItemCount() <= 0) {
-                // Initialize the loader and pass this activity, which contains the LoaderCallbacks interface.
-                loaderManager.initLoader(ARTICLE_LOADER_ID, null, this);
-            } else {
-                mArticleAdapter.clear();
-                loaderManager.restartLoader(ARTICLE_LOADER_ID, null, this);
-            }
-
-        } else {
-            // If there is no connection, hide ProgressBar.
-            mProgressBar = (ProgressBar) findViewById(R.id.progress_bar);
-            mProgressBar.setVisibility(View.GONE);
-
-            // And display a no internet connection error message.
-            mEmptyStateImage.setImageResource(R.drawable.baseline_wifi_off_black_48);
-            mEmptyState.setText(R.string.no_internet);
-
-            swipeToRefresh();
+    /**
+     * Replaces the articles of the adapter with the cached response of the current query, if the
+     * section has been shown before, so returning to it does not wait for the loader.
+     */
+    private void showCachedResults() {
+        ArticleResponseCache.Entry cached = ArticleResponseCache.getInstance().get(
+                ArticleResponseCache.keyFor(buildQueryUrl(navSection, 1)));
+        if (cached == null || cached.getArticles().isEmpty()) {
+            mArticleAdapter.clear();
+            return;
         }
+        PipelineMetrics.getInstance().record(PipelineMetrics.CACHE_AGE, cached.getAgeMillis() * 1000);
+        mArticleAdapter.submitList(cached.getArticles());
+        mProgressBar.setVisibility(View.GONE);
+        mEmptyStateImage.setVisibility(View.GONE);
+        mEmptyState.setVisibility(View.GONE);
     }
 
     /**
@@ -247,84 +403,333 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
             mEmptyState.setVisibility(View.GONE);
             mProgressBar.setVisibility(View.VISIBLE);
 
+            resetPaging();
             getLoaderManager().restartLoader(ARTICLE_LOADER_ID, null, this);
         }
     }
 
+    /**
+     * Stops loading pages of the previous list before the first page of a new list is loaded.
+     */
+    private void resetPaging() {
+        getLoaderManager().destroyLoader(PAGE_LOADER_ID);
+        mLoadingPage = 0;
+        mLastPageReached = false;
+    }
+
+    /**
+     * Starts loading a page while the user scrolls, unless a page or the first page is still loading.
+     */
+    private void loadPage(int page) {
+        if (mLoadingPage != 0 || mFirstPageLoading || mArticleAdapter.getItemCount() == 0) {
+            return;
+        }
+        mLoadingPage = page;
+        Bundle args = new Bundle();
+        args.putInt(ARG_PAGE, page);
+        getLoaderManager().restartLoader(PAGE_LOADER_ID, args, this);
+    }
+
     /**
      * Handles creating the Loader and passes in the Guardian URL to {@link ArticleLoader}.
+     * The page loader adds the page number to the query.
      */
     @Override
     public Loader<List<Article>> onCreateLoader(int i, Bundle bundle) {
+        int page = bundle != null ? bundle.getInt(ARG_PAGE, 1) : 1;
+        if (i == ARTICLE_LOADER_ID) {
+            mFirstPageLoading = true;
+        }
 
-        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        String queryUrl = buildQueryUrl(navSection, page);
 
-        String orderBy = sharedPreferences.getString(
-                getString(R.string.order_by_key),
-                getString(R.string.order_by_default));
+        // Caches and stores the response under the URI without its API key.
+        String cacheKey = ArticleResponseCache.keyFor(queryUrl);
+        boolean mustRevalidate = mForceRevalidate;
+        mForceRevalidate = false;
 
-        String pageSize = sharedPreferences.getString(
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        String keyword = getKeyword();
+        mPageSize = parsePageSize(sharedPreferences.getString(
                 getString(R.string.page_size_key),
-                getString(R.string.page_size_default));
+                getString(R.string.page_size_default)));
+
+        // Only the first page displays local search results for the keyword.
+        String storedKeyword = page > 1 ? "" : keyword;
 
-        String keyword = sharedPreferences.getString(
+        // Returns completed URI, or no URI while offline so only stored articles are loaded
+        ArticleLoader loader = new ArticleLoader(this, mOffline ? null : queryUrl, cacheKey, storedKeyword, mustRevalidate);
+        if (i == ARTICLE_LOADER_ID) {
+            loader.setIncremental(mIncrementalRefresh);
+            mIncrementalRefresh = false;
+        }
+        return loader;
+    }
+
+    /**
+     * Returns the query of the live search, or the keyword preference if the user is not searching.
+     */
+    private String getKeyword() {
+        if (!mSearchQuery.isEmpty()) {
+            return mSearchQuery;
+        }
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        return sharedPreferences.getString(
                 getString(R.string.keyword_key),
                 getString(R.string.keyword_default));
+    }
 
-        // Builds the URI string to https://content.guardianapis.com
-        Uri.Builder uriBuilder = new Uri.Builder();
-        uriBuilder.scheme(SCHEME);
-        uriBuilder.authority(AUTHORITY);
+    /**
+     * Returns the Guardian URL of a page of a section, with the query parameters of the preferences.
+     * The query of the live search, if any, replaces the keyword preference.
+     */
+    private String buildQueryUrl(String section, int page) {
+        return buildQueryUrl(section, page, getKeyword());
+    }
 
-        // Appends section path and query parameters
-        if (!navSection.isEmpty()) {
-            uriBuilder.appendPath(navSection);
+    /**
+     * Returns the Guardian URL of a page of a section searched for the keyword, with the other
+     * query parameters of the preferences.
+     */
+    private String buildQueryUrl(String section, int page, String keyword) {
+        return QueryUtils.buildQueryUrl(this, section, page, keyword, null);
+    }
+
+    /**
+     * Records the section the user opened, to learn which sections to prefetch.
+     */
+    private void onSectionOpened() {
+        mSectionPrefetcher.onSectionOpened(navSection,
+                ArticleResponseCache.keyFor(buildQueryUrl(navSection, 1)));
+    }
+
+    /**
+     * Returns the page size preference as a number, or 0 if it is not a number.
+     */
+    private static int parsePageSize(String pageSize) {
+        try {
+            return Integer.parseInt(pageSize);
+        } catch (NumberFormatException e) {
+            return 0;
         }
-        uriBuilder.appendQueryParameter("page-size", pageSize);
-        uriBuilder.appendQueryParameter("show-tags", "contributor");
-        uriBuilder.appendQueryParameter("show-fields", "thumbnail");
-        uriBuilder.appendQueryParameter("order-by", orderBy);
-        uriBuilder.appendQueryParameter("q", keyword);
-        uriBuilder.appendQueryParameter("api-key", ""); /** PLACE API KEY HERE **/
-
-        // Returns completed URI
-        return new ArticleLoader(this, uriBuilder.toString());
     }
 
     /**
-     * Called when {@link ArticleLoader} is finished fetching data.
+     * Returns true if the articles of a page are fewer than the page size of the query that was
+     * sent, which can be larger than the page size preference, such as for the Top stories feed.
+     */
+    private boolean isLastPage(ArticleLoader loader, List<Article> articles) {
+        int pageSize = QueryUtils.getPageSize(loader.getQueryUrl());
+        return articles == null || articles.size() < (pageSize > 0 ? pageSize : mPageSize);
+    }
+
+    /**
+     * Called when {@link ArticleLoader} is finished fetching data, and with the articles parsed
+     * so far while a large page is still loading.
      */
     @Override
     public void onLoadFinished(Loader<List<Article>> loader, List<Article> articles) {
-        // Hides ProgressBar when data is loaded.
-        mProgressBar = (ProgressBar) findViewById(R.id.progress_bar);
+        if (loader.getId() == PAGE_LOADER_ID) {
+            onPageLoadFinished((ArticleLoader) loader, articles);
+            return;
+        }
+        // Pages are loaded while scrolling once the first page has been loaded completely.
+        ArticleLoader articleLoader = (ArticleLoader) loader;
+        mFirstPageLoading = articleLoader.isPartialResult();
+
+        // Hides ProgressBar when data is loaded, and the refresh indicator once it is complete.
         mProgressBar.setVisibility(View.GONE);
+        if (!mFirstPageLoading) {
+            swipeRefreshLayout.setRefreshing(false);
+        }
+
+        // An incremental refresh adds the newer articles to the top of the list displayed,
+        // keeping the pages loaded while scrolling. They are added when the user scrolls back
+        // up to the first page if it is no longer held.
+        List<Article> newArticles = articleLoader.getNewArticles();
+        if (newArticles != null && !mFirstPageLoading) {
+            if (mArticleAdapter.getFirstPage() == 1) {
+                mArticleAdapter.addNewArticles(newArticles);
+            }
+            return;
+        }
 
         // If there are no articles, displays an error message.
-        mEmptyStateImage.setImageResource(R.drawable.baseline_error_outline_black_48);
-        mEmptyState.setText(R.string.no_articles_found);
+        if (mOffline) {
+            mEmptyStateImage.setImageResource(R.drawable.baseline_wifi_off_black_48);
+            mEmptyState.setText(R.string.no_internet);
+        } else {
+            mEmptyStateImage.setImageResource(R.drawable.baseline_error_outline_black_48);
+            mEmptyState.setText(R.string.no_articles_found);
+        }
 
         swipeToRefresh();
 
-        // Clears the adapter of previous data
-        mArticleAdapter.clear();
+        // A result that does not extend the previous one replaces the list, so pages loaded
+        // while scrolling the previous list are dropped.
+        if (!((ArticleLoader) loader).extendsPreviousResult()) {
+            resetPaging();
+        }
+        if (!mFirstPageLoading) {
+            mLastPageReached = isLastPage(articleLoader, articles);
+
+            // Warms the sections the user is likely to open next while they read this one,
+            // unless they are searching.
+            if (!mOffline && mSearchQuery.isEmpty()) {
+                mSectionPrefetcher.prefetchLikelyNext(navSection, new SectionPrefetcher.QueryUrlFactory() {
+                    @Override
+                    public String queryUrlFor(String section) {
+                        return buildQueryUrl(section, 1);
+                    }
+                });
+            }
+        }
 
         // If there is a list of {@link Article}s, add them to the adapter and update the RecyclerView.
+        // Only the rows that differ from the articles displayed are updated.
         if (articles != null && !articles.isEmpty()) {
             mEmptyStateImage.setVisibility(View.GONE);
             mEmptyState.setVisibility(View.GONE);
-            mArticleAdapter.addAll(articles);
+            mArticleAdapter.submitList(articles);
+        } else {
+            mArticleAdapter.clear();
+        }
+    }
+
+    /**
+     * Adds a page loaded while scrolling to the adapter, and drops the page at the other end of
+     * the list if the adapter holds more pages than allowed.
+     */
+    private void onPageLoadFinished(ArticleLoader loader, List<Article> articles) {
+        // Stored articles and chunks delivered while the page is loading are not displayed.
+        if (loader.isPartialResult()) {
+            return;
+        }
+        int page = mLoadingPage;
+        mLoadingPage = 0;
+        if (articles == null || page == 0) {
+            return;
+        }
+
+        if (page > mArticleAdapter.getLastPage()) {
+            mLastPageReached = isLastPage(loader, articles);
+            mArticleAdapter.appendPage(articles);
+            if (mArticleAdapter.getPageCount() > mMaxPagesInMemory) {
+                mArticleAdapter.dropFirstPage();
+            }
+        } else if (page < mArticleAdapter.getFirstPage()) {
+            mArticleAdapter.prependPage(articles);
+            if (mArticleAdapter.getPageCount() > mMaxPagesInMemory) {
+                mArticleAdapter.dropLastPage();
+                mLastPageReached = false;
+            }
         }
     }
 
     /**
      * Clears the adapter if the Loader resets, such as the user switches to a different app.
+     * A page loader is only reset when the list it belongs to is replaced.
      */
     @Override
     public void onLoaderReset(Loader<List<Article>> loader) {
+        if (loader.getId() == PAGE_LOADER_ID) {
+            mLoadingPage = 0;
+            return;
+        }
         mArticleAdapter.clear();
     }
 
+    /**
+     * Stops prefetching sections and releases the displayed thumbnails when the activity is
+     * destroyed, and logs the requests that were merged, cancelled or held back by the rate
+     * limiter, and the latency of the loading pipeline.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mSectionPrefetcher.shutdown();
+        mArticleAdapter.releaseThumbnails();
+        Log.i(LOG_TAG, RequestCoalescer.getInstance().toString());
+        Log.i(LOG_TAG, ApiRateLimiter.getInstance().toString());
+        Log.i(LOG_TAG, PipelineMetrics.getInstance().toString());
+    }
+
+    /**
+     * Releases cached thumbnails from memory when the system is running low on memory.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ThumbnailCache.getInstance(this).trimMemory(level);
+    }
+
+    /**
+     * Adds the search field to the ToolBar. Typing into it searches the current section as the
+     * user types, and closing it returns to the articles of the section.
+     */
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+        MenuItem searchItem = menu.findItem(R.id.search);
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mLiveSearch.onQuerySubmitted(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                mLiveSearch.onQueryChanged(query);
+                return true;
+            }
+        });
+        MenuItemCompat.setOnActionExpandListener(searchItem, new MenuItemCompat.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                mLiveSearch.cancel();
+                if (!mSearchQuery.isEmpty()) {
+                    search("");
+                }
+                return true;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Loads the results of a live search query, or the articles of the section for an empty
+     * query. Restarting the loader cancels the query still in progress.
+     */
+    private void search(String query) {
+        mSearchQuery = query;
+        if (mArticleAdapter.getItemCount() == 0) {
+            mProgressBar.setVisibility(View.VISIBLE);
+        }
+        resetPaging();
+        getLoaderManager().restartLoader(ARTICLE_LOADER_ID, null, this);
+    }
+
+    /**
+     * Displays the results of an earlier query filtered for the text being typed, while the
+     * query of the text has not been sent or answered yet.
+     */
+    private void showLocalSearchResults(List<Article> articles) {
+        if (articles.isEmpty()) {
+            return;
+        }
+        mEmptyStateImage.setVisibility(View.GONE);
+        mEmptyState.setVisibility(View.GONE);
+        mArticleAdapter.submitList(articles);
+    }
+
     /**
      * Handles opening the Navigation Drawer from the ToolBar icon.
      */
@@ -334,7 +739,32 @@ public class MainActivity extends AppCompatActivity implements LoaderCallbacks<L
             case android.R.id.home:
                 drawerLayout.openDrawer(GravityCompat.START);
                 return true;
+            case R.id.pipeline_metrics:
+                showPipelineMetrics();
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
+
+    /**
+     * Displays the percentiles of each stage of the loading pipeline over the last minutes, with
+     * a button that shares all metrics as JSON, such as to upload them to the performance dashboards.
+     */
+    private void showPipelineMetrics() {
+        String summary = PipelineMetrics.getInstance().getSummary();
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.pipeline_metrics_title)
+                .setMessage(summary.isEmpty() ? getString(R.string.pipeline_metrics_empty) : summary)
+                .setPositiveButton(android.R.string.ok, null)
+                .setNeutralButton(R.string.pipeline_metrics_export, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                        shareIntent.setType("application/json");
+                        shareIntent.putExtra(Intent.EXTRA_TEXT, PipelineMetrics.getInstance().toJson());
+                        startActivity(Intent.createChooser(shareIntent, getString(R.string.pipeline_metrics_export)));
+                    }
+                })
+                .show();
+    }
 }
\ No newline at end of file
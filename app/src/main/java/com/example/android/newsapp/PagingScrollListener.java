@@ -0,0 +1,58 @@
+package com.example.android.newsapp;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * {@link PagingScrollListener} reports when the user scrolls within a number of rows of the end
+ * of the list, so the next page can be loaded before the last row is reached, and within the
+ * same number of rows of the start, so a page that was dropped from memory can be loaded again.
+ */
+public class PagingScrollListener extends RecyclerView.OnScrollListener {
+
+    /**
+     * Receives the scroll positions at which a page should be loaded.
+     */
+    public interface Callback {
+        /** Called when the user scrolls down near the last row **/
+        void onNearEnd();
+
+        /** Called when the user scrolls up near the first row **/
+        void onNearStart();
+    }
+
+    /** Layout manager of the {@link RecyclerView} **/
+    private final LinearLayoutManager mLayoutManager;
+
+    /** Number of rows from the start or end of the list at which a page is loaded **/
+    private final int mDistance;
+
+    /** Receives the scroll positions at which a page should be loaded **/
+    private final Callback mCallback;
+
+    /**
+     * Create a {@link PagingScrollListener}.
+     *
+     * @param layoutManager of the {@link RecyclerView}
+     * @param distance number of rows from the start or end of the list at which a page is loaded
+     * @param callback that loads the pages
+     */
+    public PagingScrollListener(LinearLayoutManager layoutManager, int distance, Callback callback) {
+        mLayoutManager = layoutManager;
+        mDistance = distance;
+        mCallback = callback;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        int itemCount = mLayoutManager.getItemCount();
+        if (itemCount == 0) {
+            return;
+        }
+        if (dy > 0 && mLayoutManager.findLastVisibleItemPosition() >= itemCount - 1 - mDistance) {
+            mCallback.onNearEnd();
+        } else if (dy < 0 && mLayoutManager.findFirstVisibleItemPosition() <= mDistance) {
+            mCallback.onNearStart();
+        }
+    }
+}
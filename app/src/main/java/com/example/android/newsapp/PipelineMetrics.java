@@ -0,0 +1,280 @@
+package com.example.android.newsapp;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link PipelineMetrics} records how long each stage of loading articles and thumbnails takes,
+ * and how many bytes each request receives, in {@link LatencyHistogram}s, so a slow load can be
+ * traced to connecting, waiting for the first byte, downloading the body, parsing the JSON or
+ * decoding the thumbnails.
+ * <p/>
+ * Every metric keeps a rolling histogram of the last {@link #WINDOW_MILLIS}, made of one histogram
+ * per minute, and a histogram of every value since the app started. {@link #getSummary()} returns
+ * the percentiles of the rolling histograms as text for the app, and {@link #toJson()} returns
+ * both as JSON for the performance dashboards.
+ */
+public class PipelineMetrics {
+
+    /** Prefixes of the metrics of a request to the Guardian API and of a thumbnail request **/
+    public static final String API = "api";
+    public static final String THUMBNAIL = "thumbnail";
+
+    /** Stages of a request to the Guardian API, in microseconds, and its body bytes on the wire **/
+    public static final String API_CONNECT = "api.connect";
+    public static final String API_FIRST_BYTE = "api.first_byte";
+    public static final String API_BODY = "api.body";
+    public static final String API_PARSE = "api.parse";
+    public static final String API_BYTES = "api.bytes";
+
+    /** Time of an {@link ArticleLoader} until its first network articles and until it finished **/
+    public static final String LOAD_FIRST_ARTICLES = "load.first_articles";
+    public static final String LOAD_TOTAL = "load.total";
+
+    /** Age in microseconds of a cached response displayed when its section is opened **/
+    public static final String CACHE_AGE = "cache.age";
+
+    /** Stages of a thumbnail request, in microseconds, and its body bytes on the wire **/
+    public static final String THUMBNAIL_CONNECT = "thumbnail.connect";
+    public static final String THUMBNAIL_FIRST_BYTE = "thumbnail.first_byte";
+    public static final String THUMBNAIL_BODY = "thumbnail.body";
+    public static final String THUMBNAIL_DECODE = "thumbnail.decode";
+    public static final String THUMBNAIL_BYTES = "thumbnail.bytes";
+
+    /**
+     * Prefix of the metrics of the {@link FetchScheduler}: the fetches left waiting when one is
+     * scheduled, such as "scheduler.api.depth", and the time a fetch waited for a worker, such as
+     * "scheduler.images.wait.near_viewport"
+     */
+    public static final String SCHEDULER = "scheduler";
+
+    /** Length of a slice of the rolling window, and of the whole window, in milliseconds **/
+    static final long SLICE_MILLIS = 60 * 1000;
+    static final int WINDOW_SLICES = 5;
+    public static final long WINDOW_MILLIS = SLICE_MILLIS * WINDOW_SLICES;
+
+    /** Percentiles reported for every metric **/
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    /** The metrics shared by the whole app **/
+    private static final PipelineMetrics sInstance = new PipelineMetrics();
+
+    /** Metrics by name, in the order of their names **/
+    private final Map<String, Metric> mMetrics = new TreeMap<>();
+
+    /**
+     * Returns the metrics shared by the whole app.
+     */
+    public static PipelineMetrics getInstance() {
+        return sInstance;
+    }
+
+    PipelineMetrics() {
+    }
+
+    /**
+     * Records a value of a metric, such as a duration in microseconds or a size in bytes.
+     */
+    public void record(String name, long value) {
+        metricFor(name).record(value, currentTimeMillis());
+    }
+
+    /**
+     * Records the time since a start time taken with {@link System#nanoTime()}, in microseconds.
+     */
+    public void recordSince(String name, long startNanos) {
+        record(name, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * Records the connect, first byte and body times and the wire bytes of a closed response.
+     *
+     * @param prefix of the metric names, {@link #API} or {@link #THUMBNAIL}
+     */
+    public void recordResponse(String prefix, HttpTransport.Response response) {
+        record(prefix + ".connect", response.getConnectMicros());
+        record(prefix + ".first_byte", response.getFirstByteMicros());
+        record(prefix + ".body", response.getBodyReadMicros());
+        record(prefix + ".bytes", response.getWireBytes());
+    }
+
+    /**
+     * Returns the rolling histogram of a metric, or an empty histogram if it was never recorded.
+     */
+    public LatencyHistogram getRecent(String name) {
+        Metric metric = existingMetric(name);
+        return metric != null ? metric.recent(currentTimeMillis()) : new LatencyHistogram();
+    }
+
+    /**
+     * Returns the histogram of every value of a metric since the app started.
+     */
+    public LatencyHistogram getTotal(String name) {
+        LatencyHistogram total = new LatencyHistogram();
+        Metric metric = existingMetric(name);
+        if (metric != null) {
+            total.add(metric.mTotal);
+        }
+        return total;
+    }
+
+    /**
+     * Returns one line per metric with the count and percentiles of its rolling histogram,
+     * such as "api.first_byte n=12 p50=180ms p95=420ms p99=610ms", or an empty String if no
+     * metric was recorded during the window.
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (String name : names()) {
+            LatencyHistogram recent = getRecent(name);
+            if (recent.getCount() == 0) {
+                continue;
+            }
+            if (summary.length() > 0) {
+                summary.append('\n');
+            }
+            summary.append(name).append(" n=").append(recent.getCount());
+            for (double percentile : PERCENTILES) {
+                summary.append(" p").append((int) Math.round(percentile * 100)).append('=')
+                        .append(formatValue(name, recent.getPercentile(percentile)));
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Returns every metric as JSON, with the count, mean, percentiles and maximum of its rolling
+     * and total histograms, such as {"generatedAt":...,"windowMillis":300000,"metrics":{
+     * "api.bytes":{"unit":"bytes","recent":{"count":3,...},"total":{...}},...}}.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"generatedAt\":").append(currentTimeMillis())
+                .append(",\"windowMillis\":").append(WINDOW_MILLIS)
+                .append(",\"metrics\":{");
+        boolean first = true;
+        for (String name : names()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append('"').append(name).append("\":{\"unit\":\"")
+                    .append(isBytes(name) ? "bytes" : isCount(name) ? "count" : "us").append("\",\"recent\":");
+            appendJson(json, getRecent(name));
+            json.append(",\"total\":");
+            appendJson(json, getTotal(name));
+            json.append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    @Override
+    public String toString() {
+        return "PipelineMetrics[" + getSummary().replace('\n', ',') + "]";
+    }
+
+    /**
+     * Returns the current time in milliseconds. Tests replace it with a controlled clock.
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static void appendJson(StringBuilder json, LatencyHistogram histogram) {
+        json.append("{\"count\":").append(histogram.getCount())
+                .append(",\"mean\":").append(histogram.getMean());
+        for (double percentile : PERCENTILES) {
+            json.append(",\"p").append((int) Math.round(percentile * 100)).append("\":")
+                    .append(histogram.getPercentile(percentile));
+        }
+        json.append(",\"max\":").append(histogram.getMax()).append('}');
+    }
+
+    /**
+     * Returns a value with its unit: bytes as kB, counts as they are, durations in milliseconds.
+     */
+    private static String formatValue(String name, long value) {
+        if (isBytes(name)) {
+            return String.format(Locale.US, "%.1fkB", value / 1024.0);
+        }
+        if (isCount(name)) {
+            return String.valueOf(value);
+        }
+        return String.format(Locale.US, "%.1fms", value / 1000.0);
+    }
+
+    private static boolean isBytes(String name) {
+        return name.endsWith(".bytes");
+    }
+
+    private static boolean isCount(String name) {
+        return name.endsWith(".depth");
+    }
+
+    private String[] names() {
+        synchronized (mMetrics) {
+            return mMetrics.keySet().toArray(new String[mMetrics.size()]);
+        }
+    }
+
+    private Metric existingMetric(String name) {
+        synchronized (mMetrics) {
+            return mMetrics.get(name);
+        }
+    }
+
+    private Metric metricFor(String name) {
+        synchronized (mMetrics) {
+            Metric metric = mMetrics.get(name);
+            if (metric == null) {
+                metric = new Metric();
+                mMetrics.put(name, metric);
+            }
+            return metric;
+        }
+    }
+
+    /**
+     * The histograms of one metric: one per minute of the rolling window, reused in turn, and
+     * one since the app started.
+     */
+    private static class Metric {
+        private final LatencyHistogram[] mSlices = new LatencyHistogram[WINDOW_SLICES];
+        private final long[] mSliceNumbers = new long[WINDOW_SLICES];
+        private final LatencyHistogram mTotal = new LatencyHistogram();
+
+        private Metric() {
+            for (int i = 0; i < WINDOW_SLICES; i++) {
+                mSlices[i] = new LatencyHistogram();
+                mSliceNumbers[i] = -1;
+            }
+        }
+
+        private void record(long value, long now) {
+            long sliceNumber = now / SLICE_MILLIS;
+            int index = (int) (sliceNumber % WINDOW_SLICES);
+            LatencyHistogram slice = mSlices[index];
+            synchronized (this) {
+                // Reuses the histogram of the minute that has left the window.
+                if (mSliceNumbers[index] != sliceNumber) {
+                    slice.reset();
+                    mSliceNumbers[index] = sliceNumber;
+                }
+                slice.record(value);
+            }
+            mTotal.record(value);
+        }
+
+        private synchronized LatencyHistogram recent(long now) {
+            long sliceNumber = now / SLICE_MILLIS;
+            LatencyHistogram recent = new LatencyHistogram();
+            for (int i = 0; i < WINDOW_SLICES; i++) {
+                if (mSliceNumbers[i] > sliceNumber - WINDOW_SLICES) {
+                    recent.add(mSlices[i]);
+                }
+            }
+            return recent;
+        }
+    }
+}
@@ -1,24 +1,23 @@
 package com.example.android.newsapp;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * Helper methods for requesting, receiving and parsing article data from the Guardian API.
@@ -28,6 +27,31 @@ public final class QueryUtils {
     /** Log messages tag **/
     private static final String LOG_TAG = QueryUtils.class.getSimpleName();
 
+    /** Base URL of the Guardian API, replaced by tests that run against a local server **/
+    private static volatile String sBaseUrl = BuildConfig.API_BASE_URL;
+
+    /** Status code of a request rejected for exceeding the quota **/
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /** Value of the order-by parameter that lists the newest articles first **/
+    private static final String ORDER_BY_NEWEST = "newest";
+
+    /** Resolution in milliseconds of the from-date parameter **/
+    private static final long FROM_DATE_RESOLUTION_MILLIS = 1000;
+
+    /**
+     * Section of the combined feed of the top stories of several sections, requested with a
+     * single query, see {@link CombinedFeed}
+     */
+    public static final String TOP_STORIES = "top-stories";
+
+    /** Path of the search endpoint, which accepts several sections OR'd with "|" **/
+    private static final String SEARCH_PATH = "search";
+    private static final String SECTION_SEPARATOR = "|";
+
+    /** Largest page size accepted by the Guardian API **/
+    private static final int MAX_PAGE_SIZE = 200;
+
     /**
      * A private constructor for {@link QueryUtils} because variables and methods are static
      * and can only be accessed from the QueryUtils class name.
@@ -35,24 +59,205 @@ public final class QueryUtils {
     private QueryUtils() {
     }
 
+    /**
+     * Sets the base URL of the Guardian API, such as the URL of a local stand-in server.
+     * The default is {@link BuildConfig#API_BASE_URL}.
+     */
+    public static void setBaseUrl(String baseUrl) {
+        sBaseUrl = baseUrl;
+    }
+
+    /** Get the base URL of the Guardian API **/
+    public static String getBaseUrl() {
+        return sBaseUrl;
+    }
+
+    /**
+     * Returns the Guardian URL of a page of a section searched for the keyword, with the order
+     * and page size of the preferences.
+     * <p/>
+     * The {@link #TOP_STORIES} section is a single search of every section of the
+     * top_stories_sections array, newest first, with a page of the preferred size for each section.
+     *
+     * @param context used to read the preferences
+     * @param section path of the section, {@link #TOP_STORIES}, or an empty String for all sections
+     * @param page number, starting at 1
+     * @param keyword of the search, or an empty String
+     * @param fromDate earliest publication date of the articles, see
+     *                 {@link ArticleDates#formatIso(long)}, or null for no limit
+     */
+    public static String buildQueryUrl(Context context, String section, int page, String keyword,
+                                       String fromDate) {
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+
+        String orderBy = sharedPreferences.getString(
+                context.getString(R.string.order_by_key),
+                context.getString(R.string.order_by_default));
+
+        String pageSize = sharedPreferences.getString(
+                context.getString(R.string.page_size_key),
+                context.getString(R.string.page_size_default));
+
+        // Builds the URI string to the base URL, https://content.guardianapis.com by default
+        Uri.Builder uriBuilder = Uri.parse(sBaseUrl).buildUpon();
+
+        // Appends section path and query parameters
+        if (TOP_STORIES.equals(section)) {
+            String[] sections = context.getResources().getStringArray(R.array.top_stories_sections);
+            uriBuilder.appendPath(SEARCH_PATH);
+            uriBuilder.appendQueryParameter("section", TextUtils.join(SECTION_SEPARATOR, sections));
+            pageSize = String.valueOf(Math.min(MAX_PAGE_SIZE, sections.length * parsePageSize(pageSize)));
+            orderBy = ORDER_BY_NEWEST;
+        } else if (!section.isEmpty()) {
+            uriBuilder.appendPath(section);
+        }
+        uriBuilder.appendQueryParameter("page-size", pageSize);
+        uriBuilder.appendQueryParameter("show-tags", "contributor");
+        uriBuilder.appendQueryParameter("show-fields", "thumbnail");
+        uriBuilder.appendQueryParameter("order-by", orderBy);
+        uriBuilder.appendQueryParameter("q", keyword);
+        if (page > 1) {
+            uriBuilder.appendQueryParameter("page", String.valueOf(page));
+        }
+        if (fromDate != null) {
+            uriBuilder.appendQueryParameter("from-date", fromDate);
+        }
+        uriBuilder.appendQueryParameter("api-key", ""); /** PLACE API KEY HERE **/
+
+        // Returns completed URI
+        return uriBuilder.toString();
+    }
+
     /**
      * Query the Guardian dataset and return the {@link Article} objects.
+     * <p/>
+     * A response cached in the {@link ArticleResponseCache} within its stale-while-revalidate
+     * window is returned right away and revalidated in the background. Otherwise a cached response
+     * is revalidated with a conditional request, and reused if the server answers 304 Not Modified.
+     *
+     * @param requestUrl of the query
+     * @param cacheKey of the query in the {@link ArticleResponseCache}
+     * @param mustRevalidate true to always ask the server, such as when the user refreshes
+     * @param listener that receives each {@link Article} as soon as it has been parsed, before
+     *                 the whole response has been read, or null
+     * @param signal that cancels the request when it is superseded, or null
+     * @param priority of the request in the {@link FetchScheduler}, such as
+     *                 {@link FetchScheduler#PRIORITY_VISIBLE}
      */
-    public static List<Article> fetchArticleData(String requestUrl) {
-        // Creates URL object
-        URL url = createUrl(requestUrl);
+    public static List<Article> fetchArticleData(final String requestUrl, final String cacheKey,
+                                                 boolean mustRevalidate, ArticleJsonParser.Listener listener,
+                                                 RequestCoalescer.CancelSignal signal, int priority) {
+        final ArticleResponseCache responseCache = ArticleResponseCache.getInstance();
+        final ArticleResponseCache.Entry cached = responseCache.get(cacheKey);
+
+        if (cached != null && !mustRevalidate && responseCache.isWithinStaleWindow(cached)) {
+            responseCache.revalidateInBackground(cacheKey, new Runnable() {
+                @Override
+                public void run() {
+                    fetchAndCache(requestUrl, cacheKey, cached, true, null, null,
+                            FetchScheduler.PRIORITY_PREFETCH);
+                }
+            });
+            return new ArrayList<>(cached.getArticles());
+        }
+        return fetchAndCache(requestUrl, cacheKey, cached, true, listener, signal, priority);
+    }
+
+    /**
+     * Requests only the articles published after the newest of the held articles, using the
+     * from-date parameter, so a refresh with nothing new receives an empty page instead of the
+     * whole page again. The query must list the newest articles first, see
+     * {@link #isNewestFirst(String)}.
+     *
+     * @param requestUrl of the query
+     * @param heldArticles articles of the query already held, newest first
+     * @param signal that cancels the request when it is superseded, or null
+     * @param priority of the request in the {@link FetchScheduler}, such as
+     *                 {@link FetchScheduler#PRIORITY_VISIBLE}
+     * @return the articles published since the newest held article, newest first, or null if
+     * the request failed or none of the held articles has a known date
+     */
+    public static List<Article> fetchNewerArticles(String requestUrl, List<Article> heldArticles,
+                                                   RequestCoalescer.CancelSignal signal, int priority) {
+        long newest = ArticleDates.UNKNOWN;
+        for (Article article : heldArticles) {
+            newest = Math.max(newest, article.getPublishedAt());
+        }
+        if (newest == ArticleDates.UNKNOWN) {
+            return null;
+        }
+        // The from-date is inclusive, so the newest held article itself is skipped.
+        String newerUrl = Uri.parse(requestUrl).buildUpon()
+                .appendQueryParameter("from-date", ArticleDates.formatIso(newest + FROM_DATE_RESOLUTION_MILLIS))
+                .toString();
+        // Every refresh has its own from-date, so the response is not put in the response cache,
+        // where it would never be asked for again.
+        return fetchAndCache(newerUrl, ArticleResponseCache.keyFor(newerUrl), null, false, null, signal, priority);
+    }
+
+    /**
+     * Returns true if the query lists the newest articles first, so the articles published since
+     * the newest held one can be fetched on their own.
+     */
+    public static boolean isNewestFirst(String requestUrl) {
+        return ORDER_BY_NEWEST.equals(Uri.parse(requestUrl).getQueryParameter("order-by"));
+    }
+
+    /**
+     * Returns the page size of the query, or 0 if it has none.
+     */
+    public static int getPageSize(String requestUrl) {
+        return parsePageSize(Uri.parse(requestUrl).getQueryParameter("page-size"));
+    }
 
-        // Calls the makeHTTPRequest() method and receives a JSON response
-        String jsonResponse = null;
+    /**
+     * Returns the sections OR'd in the section parameter of the query, such as the sections of
+     * the {@link #TOP_STORIES} query, or an empty list if it has none.
+     */
+    public static List<String> getSections(String requestUrl) {
+        String sections = Uri.parse(requestUrl).getQueryParameter("section");
+        List<String> result = new ArrayList<>();
+        if (sections != null && !sections.isEmpty()) {
+            result.addAll(Arrays.asList(sections.split(Pattern.quote(SECTION_SEPARATOR))));
+        }
+        return result;
+    }
+
+    private static int parsePageSize(String pageSize) {
         try {
-            jsonResponse = makeHttpRequest(url);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem making the HTTP request.", e);
+            return Integer.parseInt(pageSize);
+        } catch (NumberFormatException e) {
+            return 0;
         }
-        // Calls the JSON parsing method and creates List of {@ Article}s.
-        List<Article> articles = extractFeatureFromJson(jsonResponse);
+    }
 
-        return articles;
+    /**
+     * Sends the request, conditional if there is a cached response, and stores the result in
+     * the {@link ArticleResponseCache} if cacheResponse is true. An identical request in progress
+     * is joined through the {@link RequestCoalescer} instead of being sent again.
+     */
+    private static List<Article> fetchAndCache(String requestUrl, final String cacheKey,
+                                               final ArticleResponseCache.Entry cached,
+                                               final boolean cacheResponse,
+                                               ArticleJsonParser.Listener listener,
+                                               RequestCoalescer.CancelSignal signal,
+                                               final int priority) {
+        // Creates URL object
+        final URL url = createUrl(requestUrl);
+
+        return RequestCoalescer.getInstance().fetch(cacheKey, new RequestCoalescer.Fetch() {
+            @Override
+            public List<Article> run(RequestCoalescer.Call call) {
+                // Calls the makeHTTPRequest() method, which parses the {@link Article}s from the response.
+                List<Article> articles = null;
+                try {
+                    articles = makeHttpRequest(url, cacheKey, cached, cacheResponse, call, priority);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem making the HTTP request.", e);
+                }
+                return articles;
+            }
+        }, listener, signal, priority);
     }
 
     /**
@@ -70,156 +275,132 @@ public final class QueryUtils {
     }
 
     /**
-     * Makes an HTTP request to the URL and returns the response.
+     * Makes an HTTP request to the URL and returns the {@link Article}s parsed from the response,
+     * or null if there was no response or the call was aborted. If a cached response is given,
+     * its validators are sent and its articles are returned when the server answers
+     * 304 Not Modified. A successful response is put in the {@link ArticleResponseCache} if
+     * cacheResponse is true. The request is only sent if the {@link ApiRateLimiter} admits it, as
+     * a foreground request if it is visible.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
-        String jsonResponse = "";
+    private static List<Article> makeHttpRequest(URL url, String cacheKey, ArticleResponseCache.Entry cached,
+                                                 boolean cacheResponse, RequestCoalescer.Call call,
+                                                 int priority) throws IOException {
+        List<Article> articles = null;
 
-        // If the URL is null, return the response early.
+        // If the URL is null, return early.
         if (url == null) {
-            return jsonResponse;
+            return articles;
+        }
+
+        // Keeps the requests within the quota of the API key.
+        ApiRateLimiter rateLimiter = ApiRateLimiter.getInstance();
+        if (!rateLimiter.acquire(priority == FetchScheduler.PRIORITY_VISIBLE
+                ? ApiRateLimiter.PRIORITY_FOREGROUND : ApiRateLimiter.PRIORITY_BACKGROUND)) {
+            Log.w(LOG_TAG, "Request not sent to stay within the API quota: " + cacheKey);
+            return articles;
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        // Asks the server to answer 304 Not Modified if the cached response is still current.
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null) {
+            if (cached.getETag() != null) {
+                headers.put("If-None-Match", cached.getETag());
+            }
+            if (cached.getLastModified() != null) {
+                headers.put("If-Modified-Since", cached.getLastModified());
+            }
+        }
 
-        // Opens a connection to get data.
+        // Sends the request through the shared transport, which keeps the connection alive
+        // for the next request once the response is closed.
+        HttpTransport.Response response = null;
         try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.setReadTimeout(10000);
-            urlConnection.setConnectTimeout(15000);
-            urlConnection.connect();
-
-            // If the request is successful, InputStream is called and the response is parsed.
-            if (urlConnection.getResponseCode() == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
+            response = HttpTransport.getInstance().get(url, headers);
+            call.setResponse(response);
+
+            int responseCode = response.getResponseCode();
+            if (responseCode == HTTP_TOO_MANY_REQUESTS
+                    || responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                // Stops sending requests until the server's Retry-After time or a backoff has passed.
+                rateLimiter.onRejected(ApiRateLimiter.parseRetryAfter(
+                        response.getHeaderField("Retry-After"), System.currentTimeMillis()));
+            } else if (responseCode == HttpURLConnection.HTTP_OK
+                    || responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                rateLimiter.onSuccess();
+            }
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                // The feed has not changed, so the cached articles are reused without parsing.
+                ArticleResponseCache.getInstance().markValidated(cached);
+                articles = new ArrayList<>(cached.getArticles());
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                // If the request is successful, the decompressed body is parsed. The parse time is
+                // the time spent reading the body minus the time spent waiting for the network.
+                long parseStart = System.nanoTime();
+                long bodyReadBefore = response.getBodyReadMicros();
+                articles = readArticlesFromStream(response.getBody(), call);
+                PipelineMetrics.getInstance().record(PipelineMetrics.API_PARSE,
+                        (System.nanoTime() - parseStart) / 1000 - (response.getBodyReadMicros() - bodyReadBefore));
+                if (call.isAborted()) {
+                    // The articles read before the connection was closed are not a whole response.
+                    return null;
+                }
+                // Only a response parsed to its end is cached, with its validators.
+                if (articles != null && cacheResponse) {
+                    ArticleResponseCache.getInstance().put(cacheKey, new ArticleResponseCache.Entry(articles,
+                            response.getHeaderField("ETag"),
+                            response.getHeaderField("Last-Modified"),
+                            System.currentTimeMillis()));
+                }
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                Log.e(LOG_TAG, "Error response code: " + responseCode);
             }
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem retrieving the article JSON results.", e);
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (inputStream != null) {
-                inputStream.close();
-            }
-        }
-        return jsonResponse;
-    }
-
-    /**
-     * Convert the {@link InputStream} to a String containing the JSON response.
-     */
-    private static String readFromStream(InputStream inputStream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        if (inputStream != null) {
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while (line != null) {
-                output.append(line);
-                line = reader.readLine();
+            if (response != null) {
+                response.close();
+                if (!call.isAborted()) {
+                    PipelineMetrics.getInstance().recordResponse(PipelineMetrics.API, response);
+                }
             }
         }
-        return output.toString();
+        return articles;
     }
 
     /**
-     * Returns a list of {@link Article} objects built from parsing the JSON response.
+     * Returns a list of {@link Article} objects parsed from the JSON response while it is read
+     * from the {@link InputStream}, or null if the response is empty or could not be read to its
+     * end. Each article is also passed to the call, which forwards it to the waiting requests.
+     * Thumbnails are not downloaded here; each {@link Article} carries its thumbnail URL and
+     * {@link ArticleAdapter} loads the image when the row is displayed.
      */
-    private static List<Article> extractFeatureFromJson(String articleJSON) {
-        // Returns early if the JSON string is empty.
-        if (TextUtils.isEmpty(articleJSON)) {
-            return null;
-        }
-
+    private static List<Article> readArticlesFromStream(InputStream inputStream,
+                                                        final RequestCoalescer.Call call) {
         // Creates an empty ArrayList that will contain article data.
-        List<Article> articles = new ArrayList<>();
+        final List<Article> articles = new ArrayList<>();
 
-        // Try to parse the JSON response. If there is a problem with the JSON formatting,
-        // a JSONException exception object is thrown.
-        // Catch the exception and print an error message to the logs.
+        // Try to parse the JSON response. If the body is cut off or the JSON is malformed, an
+        // IOException is thrown and the response counts as failed, so the articles parsed so far
+        // are never cached as if they were the whole response.
         try {
-            // Create a JSONObject from the JSON response string.
-            JSONObject baseJsonResponse = new JSONObject(articleJSON);
-
-            // Extract the JSONObject associated with key "response".
-            JSONObject articleObject = baseJsonResponse.getJSONObject("response");
-
-            // Extract the JSONArray associated with key "results", which represents
-            // a list of information about articles.
-            JSONArray results = articleObject.getJSONArray("results");
-
-            // For each article in the results JSONArray, create an {@link Article} object.
-            for (int i = 0; i < results.length(); i++) {
-                // Get an article at position i from the list of articles.
-                JSONObject currentArticle = results.getJSONObject(i);
-
-                // Extract the values for the keys "webTitle", "sectionName", "webPublicationDate", and "webUrl".
-                String title = currentArticle.getString("webTitle");
-                String section = currentArticle.getString("sectionName");
-                String date = currentArticle.getString("webPublicationDate");
-                String url = currentArticle.getString("webUrl");
-
-                // Extract the JSONArray associated with key "tags", which represents
-                // information about the contributor of the article.
-                JSONArray tags = currentArticle.getJSONArray("tags");
-                String contributor = "";
-
-                if(tags.length() == 0) {
-                    contributor = null;
-                } else {
-                    for (int x = 0; x < tags.length(); x++) {
-                        // Get a contributor at position x from the list of tags.
-                        JSONObject currentContributor = tags.getJSONObject(x);
-
-                        // Extract the value for the key "webTitle", which represents
-                        // the first and last name of the contributor.
-                        contributor = currentContributor.getString("webTitle");
-                    }
+            boolean hasResponse = ArticleJsonParser.parse(inputStream, new ArticleJsonParser.Listener() {
+                @Override
+                public void onArticle(Article article) {
+                    // Add the new {@link Article} object to the list of articles.
+                    articles.add(article);
+                    call.onArticle(article);
                 }
-
-                // Check if a JSONObject with key "fields" exists. If so, extract the thumbnail String.
-                // Reference: https://stackoverflow.com/questions/10594188/check-if-a-particular-json-object-is-available-or-not
-                String thumbnail = "";
-                if(results.getJSONObject(i).has("fields")) {
-                    JSONObject fields = currentArticle.getJSONObject("fields");
-                    thumbnail = fields.getString("thumbnail");
-                }
-
-                // Create a new {@link Article} object with the title, section, date, contributor, url,
-                // and thumbnail from the JSON response.
-                Article article = new Article(title, contributor, section, date, url, getBitmap(thumbnail));
-
-                // Add the new {@link Article} object to the list of articles.
-                articles.add(article);
+            });
+            // Returns early if the JSON response is empty.
+            if (!hasResponse) {
+                return null;
             }
-        } catch(JSONException e) {
-            Log.e("QueryUtils", "Problem parsing the article JSON results.", e);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem parsing the article JSON results.", e);
+            return null;
         }
         // Returns the list of articles.
         return articles;
     }
-
-    /**
-     * Returns the thumbnail String after converting it to Bitmap.
-     * Reference: https://stackoverflow.com/questions/51587354/how-to-replace-low-res-image-reference-at-end-of-url-string-with-the-higher-res#51587860
-     */
-    private static Bitmap getBitmap(String originalUrl) {
-        Bitmap bitmap = null;
-        if(!"".equals(originalUrl)) {
-            InputStream inputStream = null;
-            try {
-                inputStream = new URL(originalUrl).openStream();
-                bitmap = BitmapFactory.decodeStream(inputStream);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return bitmap;
-    }
 }
@@ -0,0 +1,324 @@
+package com.example.android.newsapp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RequestCoalescer} merges identical concurrent requests into a single network fetch and
+ * cancels fetches that nobody waits for anymore.
+ * <p/>
+ * Requests are identified by their cache key. The first request of a key schedules a fetch on the
+ * API pool of the {@link FetchScheduler}, and requests of the same key that arrive while it is in
+ * progress wait for the same result. A more urgent request raises the priority of a fetch that is
+ * still waiting for a worker. Each waiter receives the articles parsed so far as soon as it joins,
+ * then every following article. A waiter can stop waiting with its {@link CancelSignal}. When the
+ * last waiter has left, the fetch is aborted after a short grace period, in which an identical
+ * request, such as the one replacing a restarted loader, can still join it. A fetch aborted before
+ * it started is dropped from the scheduler. The bytes received by aborted fetches are counted as
+ * wasted.
+ */
+public class RequestCoalescer {
+
+    /** Time in milliseconds a fetch without waiters keeps running before it is aborted **/
+    private static final long CANCEL_GRACE_MILLIS = 300;
+
+    /** The coalescer shared by the whole app **/
+    private static final RequestCoalescer sInstance = new RequestCoalescer();
+
+    /**
+     * Performs the network request of a fetch.
+     */
+    public interface Fetch {
+        /**
+         * Sends the request and returns the parsed articles, or null if there was no result.
+         * Each parsed article is passed to {@link Call#onArticle(Article)}, and the response to
+         * {@link Call#setResponse(HttpTransport.Response)} so the fetch can be aborted.
+         */
+        List<Article> run(Call call);
+    }
+
+    /**
+     * Lets a waiter stop waiting for its request. Cancelling wakes the waiting thread right away.
+     */
+    public static class CancelSignal {
+        private volatile boolean mCancelled;
+        private volatile Call mCall;
+
+        /** Stops waiting for the request **/
+        public void cancel() {
+            mCancelled = true;
+            Call call = mCall;
+            if (call != null) {
+                synchronized (call) {
+                    call.notifyAll();
+                }
+            }
+        }
+
+        /** Returns true if the request was cancelled **/
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    /**
+     * A network fetch in progress and the requests waiting for it.
+     */
+    public class Call {
+        private final String mKey;
+
+        /** Articles parsed so far, replayed to requests that join later **/
+        private final List<Article> mParsed = new ArrayList<>();
+
+        /** Listeners of the waiting requests **/
+        private final List<ArticleJsonParser.Listener> mListeners = new ArrayList<>();
+
+        /** Number of requests waiting for the result **/
+        private int mWaiters;
+
+        /** Response being read, or null before it has been received **/
+        private HttpTransport.Response mResponse;
+
+        /** Token of the fetch in the {@link FetchScheduler} **/
+        private FetchScheduler.Token mToken;
+
+        private boolean mAborted;
+        private boolean mDone;
+        private List<Article> mResult;
+
+        private Call(String key) {
+            mKey = key;
+        }
+
+        /**
+         * Passes a parsed article to every waiting request.
+         */
+        public synchronized void onArticle(Article article) {
+            mParsed.add(article);
+            for (ArticleJsonParser.Listener listener : mListeners) {
+                listener.onArticle(article);
+            }
+        }
+
+        /**
+         * Records the response being read, so the fetch can be aborted. A response received
+         * after the fetch was aborted is aborted right away, since a connection that is still
+         * being opened cannot be interrupted.
+         */
+        public void setResponse(HttpTransport.Response response) {
+            boolean aborted;
+            synchronized (this) {
+                mResponse = response;
+                aborted = mAborted;
+            }
+            if (aborted) {
+                response.abort();
+            }
+        }
+
+        /** Returns true if the fetch was aborted because no request waits for it anymore **/
+        public synchronized boolean isAborted() {
+            return mAborted;
+        }
+    }
+
+    /** Fetches in progress by cache key **/
+    private final Map<String, Call> mCalls = new HashMap<>();
+
+    /** Aborts fetches without waiters once the grace period has passed **/
+    private final ScheduledExecutorService mCancelExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /** Counters of fetches, requests merged into a fetch, aborted fetches and their bytes **/
+    private int mFetchCount;
+    private int mCoalescedCount;
+    private int mAbortedCount;
+    private long mWastedBytes;
+
+    /**
+     * Returns the coalescer shared by the whole app.
+     */
+    public static RequestCoalescer getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the result of the fetch of the key, starting it unless an identical one is in
+     * progress, and waits for it on the calling thread. The bytes received are counted for the
+     * calling thread, see {@link HttpTransport#getThreadWireBytes()}, if this request started
+     * the fetch.
+     *
+     * @param key of the request, see {@link ArticleResponseCache#keyFor(String)}
+     * @param fetch that sends the request if there is no identical one in progress
+     * @param listener that receives each {@link Article} as soon as it has been parsed, or null
+     * @param signal that stops waiting for the result, or null
+     * @param priority of the request in the {@link FetchScheduler}, such as
+     *                 {@link FetchScheduler#PRIORITY_VISIBLE}
+     * @return a copy of the articles, or null if there was no result or the request was cancelled
+     */
+    public List<Article> fetch(String key, final Fetch fetch, ArticleJsonParser.Listener listener,
+                               CancelSignal signal, int priority) {
+        final Call call;
+        boolean started = false;
+        synchronized (this) {
+            Call current = mCalls.get(key);
+            if (current != null && !current.isAborted()) {
+                call = current;
+                mCoalescedCount++;
+            } else {
+                call = new Call(key);
+                mCalls.put(key, call);
+                mFetchCount++;
+                started = true;
+            }
+            // Counted while the fetch is looked up, so it cannot be aborted before it is joined.
+            synchronized (call) {
+                call.mWaiters++;
+            }
+        }
+
+        FetchScheduler.Token token;
+        synchronized (call) {
+            if (listener != null) {
+                for (Article article : call.mParsed) {
+                    listener.onArticle(article);
+                }
+                call.mListeners.add(listener);
+            }
+            token = call.mToken;
+        }
+        if (started) {
+            token = FetchScheduler.getInstance().execute(FetchScheduler.API, priority, new Runnable() {
+                @Override
+                public void run() {
+                    runCall(call, fetch);
+                }
+            });
+            synchronized (call) {
+                call.mToken = token;
+            }
+        } else if (token != null) {
+            token.raisePriority(priority);
+        }
+
+        boolean cancelled = false;
+        List<Article> result = null;
+        long wireBytes = 0;
+        synchronized (call) {
+            if (signal != null) {
+                signal.mCall = call;
+            }
+            try {
+                while (!call.mDone) {
+                    if (signal != null && signal.isCancelled()) {
+                        cancelled = true;
+                        break;
+                    }
+                    call.wait();
+                }
+            } catch (InterruptedException e) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+            }
+            call.mWaiters--;
+            call.mListeners.remove(listener);
+            if (call.mDone && !cancelled) {
+                result = call.mResult != null ? new ArrayList<>(call.mResult) : null;
+                wireBytes = call.mResponse != null ? call.mResponse.getWireBytes() : 0;
+            } else if (call.mWaiters == 0) {
+                scheduleAbort(call);
+            }
+        }
+        if (started) {
+            HttpTransport.addThreadWireBytes(wireBytes);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a fetch on a worker of the {@link FetchScheduler} and wakes the waiting requests when it is done.
+     */
+    private void runCall(Call call, Fetch fetch) {
+        List<Article> result = null;
+        try {
+            result = fetch.run(call);
+        } finally {
+            synchronized (this) {
+                if (mCalls.get(call.mKey) == call) {
+                    mCalls.remove(call.mKey);
+                }
+            }
+            synchronized (call) {
+                call.mResult = call.mAborted ? null : result;
+                call.mDone = true;
+                call.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Aborts the fetch after the grace period, unless a request has joined it since.
+     */
+    private void scheduleAbort(final Call call) {
+        mCancelExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                HttpTransport.Response response;
+                synchronized (RequestCoalescer.this) {
+                    synchronized (call) {
+                        if (call.mWaiters > 0 || call.mDone || call.mAborted) {
+                            return;
+                        }
+                        call.mAborted = true;
+                        response = call.mResponse;
+                        // A fetch that has not started yet is not sent at all.
+                        if (call.mToken != null && call.mToken.cancel()) {
+                            call.mDone = true;
+                        }
+                    }
+                    // A new request of the key starts a new fetch instead of joining this one.
+                    if (mCalls.get(call.mKey) == call) {
+                        mCalls.remove(call.mKey);
+                    }
+                    mAbortedCount++;
+                }
+                if (response != null) {
+                    response.abort();
+                    synchronized (RequestCoalescer.this) {
+                        mWastedBytes += response.getWireBytes();
+                    }
+                }
+            }
+        }, CANCEL_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Get the number of network fetches started **/
+    public synchronized int getFetchCount() {
+        return mFetchCount;
+    }
+
+    /** Get the number of requests that joined a fetch already in progress **/
+    public synchronized int getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    /** Get the number of fetches aborted because no request waited for them anymore **/
+    public synchronized int getAbortedCount() {
+        return mAbortedCount;
+    }
+
+    /** Get the number of bytes received by aborted fetches before they were aborted **/
+    public synchronized long getWastedBytes() {
+        return mWastedBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RequestCoalescer[fetches=" + mFetchCount + ", coalesced=" + mCoalescedCount
+                + ", aborted=" + mAbortedCount + ", wastedBytes=" + mWastedBytes + "]";
+    }
+}
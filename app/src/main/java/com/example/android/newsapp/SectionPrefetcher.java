@@ -0,0 +1,270 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link SectionPrefetcher} loads the navigation drawer sections the user is likely to open next
+ * while they read the current one, so switching sections is answered from the
+ * {@link ArticleResponseCache} and {@link ArticleStore} instead of waiting for a cold network fetch.
+ * <p/>
+ * The sections are predicted by a {@link SectionUsageModel}, which is saved in the
+ * SharedPreferences. Prefetches run one at a time on a minimum priority thread, send their requests
+ * at prefetch priority through the {@link FetchScheduler}, so they never hold up a visible load,
+ * and are limited to a number of requests and bytes per hour. Sections opened while their
+ * prefetched response was still cached are counted as hits, and prefetched sections that were never
+ * opened as misses.
+ */
+public class SectionPrefetcher {
+
+    /** Log messages tag **/
+    private static final String LOG_TAG = SectionPrefetcher.class.getSimpleName();
+
+    /** SharedPreferences holding the saved {@link SectionUsageModel} **/
+    private static final String PREFERENCES_NAME = "section_usage";
+    private static final String KEY_MODEL = "model";
+
+    /** Length of the budget window in milliseconds **/
+    private static final long BUDGET_WINDOW_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * Builds the query URL of a section.
+     */
+    public interface QueryUrlFactory {
+        String queryUrlFor(String section);
+    }
+
+    /** Context of the app, used to open the {@link ArticleStore} **/
+    private final Context mContext;
+
+    /** Learns the order in which the user opens sections **/
+    private final SectionUsageModel mModel;
+
+    /** Saves the model **/
+    private final SharedPreferences mPreferences;
+
+    /** Number of sections prefetched after a section has loaded **/
+    private final int mSectionCount;
+
+    /** Maximum number of requests and bytes used by prefetches per hour **/
+    private final int mMaxRequests;
+    private final long mMaxBytes;
+
+    /** Runs the prefetches one at a time in the background **/
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Section prefetch");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /** Start time and bytes of the prefetches in the budget window, oldest first **/
+    private final LinkedList<long[]> mRecentPrefetches = new LinkedList<>();
+
+    /** Cache keys of prefetched sections that have not been opened yet **/
+    private final Set<String> mPrefetchedKeys = new HashSet<>();
+
+    /** Cache keys queued or being prefetched **/
+    private final Set<String> mPendingKeys = new HashSet<>();
+
+    /** Counters of prefetches, prefetched sections opened and not opened, and skipped prefetches **/
+    private int mPrefetchCount;
+    private int mHitCount;
+    private int mMissCount;
+    private int mOverBudgetCount;
+    private long mPrefetchedBytes;
+
+    /**
+     * Create a {@link SectionPrefetcher}.
+     *
+     * @param context of the app
+     * @param sectionCount number of sections prefetched after a section has loaded
+     * @param maxRequests maximum number of prefetch requests per hour
+     * @param maxBytes maximum number of bytes received by prefetches per hour
+     */
+    public SectionPrefetcher(Context context, int sectionCount, int maxRequests, long maxBytes) {
+        mContext = context.getApplicationContext();
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mModel = loadUsageModel(context);
+        mSectionCount = sectionCount;
+        mMaxRequests = maxRequests;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the saved {@link SectionUsageModel}, or an empty model if none has been saved.
+     */
+    public static SectionUsageModel loadUsageModel(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        return SectionUsageModel.deserialize(preferences.getString(KEY_MODEL, null));
+    }
+
+    /**
+     * Records that the user opened a section and counts a hit if it had been prefetched.
+     *
+     * @param section that was opened
+     * @param cacheKey of the section's query
+     */
+    public void onSectionOpened(String section, String cacheKey) {
+        mModel.recordVisit(section);
+        mPreferences.edit().putString(KEY_MODEL, mModel.serialize()).apply();
+
+        synchronized (this) {
+            if (mPrefetchedKeys.remove(cacheKey)) {
+                if (ArticleResponseCache.getInstance().get(cacheKey) != null) {
+                    mHitCount++;
+                } else {
+                    mMissCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Prefetches the sections most likely to be opened after the current one, unless their
+     * response is still fresh in the {@link ArticleResponseCache} or the budget is used up.
+     *
+     * @param currentSection that has finished loading
+     * @param queryUrlFactory that builds the query URL of a section
+     */
+    public void prefetchLikelyNext(String currentSection, QueryUrlFactory queryUrlFactory) {
+        ArticleResponseCache responseCache = ArticleResponseCache.getInstance();
+        for (String section : mModel.predictNext(currentSection, mSectionCount)) {
+            final String queryUrl = queryUrlFactory.queryUrlFor(section);
+            final String cacheKey = ArticleResponseCache.keyFor(queryUrl);
+            ArticleResponseCache.Entry cached = responseCache.get(cacheKey);
+            if (cached != null && responseCache.isWithinStaleWindow(cached)) {
+                continue;
+            }
+            synchronized (this) {
+                if (!mPendingKeys.add(cacheKey)) {
+                    continue;
+                }
+            }
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        prefetch(queryUrl, cacheKey);
+                    } finally {
+                        synchronized (SectionPrefetcher.this) {
+                            mPendingKeys.remove(cacheKey);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Fetches a section on the prefetch thread, if the budget allows, and stores its articles.
+     */
+    private void prefetch(String queryUrl, String cacheKey) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (!hasBudget(now)) {
+                mOverBudgetCount++;
+                return;
+            }
+        }
+
+        long bytesBefore = HttpTransport.getThreadWireBytes();
+        List<Article> articles = QueryUtils.fetchArticleData(queryUrl, cacheKey, false, null, null,
+                FetchScheduler.PRIORITY_PREFETCH);
+        long bytes = HttpTransport.getThreadWireBytes() - bytesBefore;
+        if (articles != null) {
+            try {
+                ArticleStore.getInstance(mContext).putQueryResults(cacheKey, articles);
+            } catch (SQLiteException e) {
+                Log.e(LOG_TAG, "Problem storing the prefetched articles.", e);
+            }
+            CombinedFeed.distribute(mContext, queryUrl, articles);
+        }
+
+        synchronized (this) {
+            mRecentPrefetches.add(new long[]{now, bytes});
+            mPrefetchCount++;
+            mPrefetchedBytes += bytes;
+            if (articles != null && !mPrefetchedKeys.add(cacheKey)) {
+                // Prefetched again before it was opened.
+                mMissCount++;
+            }
+        }
+    }
+
+    /**
+     * Returns true if another prefetch fits in the request and byte budget of the last hour.
+     */
+    private boolean hasBudget(long now) {
+        while (!mRecentPrefetches.isEmpty() && now - mRecentPrefetches.getFirst()[0] > BUDGET_WINDOW_MILLIS) {
+            mRecentPrefetches.removeFirst();
+        }
+        long bytes = 0;
+        for (long[] prefetch : mRecentPrefetches) {
+            bytes += prefetch[1];
+        }
+        return mRecentPrefetches.size() < mMaxRequests && bytes < mMaxBytes;
+    }
+
+    /** Get the number of sections prefetched **/
+    public synchronized int getPrefetchCount() {
+        return mPrefetchCount;
+    }
+
+    /** Get the number of prefetched sections that were opened while still cached **/
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /** Get the number of prefetched sections that were not opened, or no longer cached when opened **/
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /** Get the number of prefetches skipped because the budget was used up **/
+    public synchronized int getOverBudgetCount() {
+        return mOverBudgetCount;
+    }
+
+    /** Get the number of bytes received by prefetches **/
+    public synchronized long getPrefetchedBytes() {
+        return mPrefetchedBytes;
+    }
+
+    /** Get the share of prefetched sections that were opened, or 0 if none was resolved yet **/
+    public synchronized double getHitRate() {
+        int resolved = mHitCount + mMissCount;
+        return resolved == 0 ? 0 : (double) mHitCount / resolved;
+    }
+
+    /**
+     * Stops prefetching and counts prefetched sections that were not opened as misses.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+        synchronized (this) {
+            mMissCount += mPrefetchedKeys.size();
+            mPrefetchedKeys.clear();
+        }
+        Log.i(LOG_TAG, toString());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SectionPrefetcher[prefetches=" + mPrefetchCount + ", hits=" + mHitCount
+                + ", misses=" + mMissCount + ", hitRate=" + getHitRate()
+                + ", overBudget=" + mOverBudgetCount + ", bytes=" + mPrefetchedBytes + "]";
+    }
+}
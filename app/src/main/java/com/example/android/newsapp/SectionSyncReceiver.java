@@ -0,0 +1,22 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.content.WakefulBroadcastReceiver;
+
+/**
+ * {@link SectionSyncReceiver} starts the {@link SectionSyncService} when its alarm goes off,
+ * holding a wake lock until the sync has finished, and sets the alarm again after a reboot.
+ * Reference: https://developer.android.com/reference/android/support/v4/content/WakefulBroadcastReceiver
+ */
+public class SectionSyncReceiver extends WakefulBroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            SectionSyncService.schedule(context);
+        } else if (SectionSyncService.ACTION_SYNC.equals(intent.getAction())) {
+            startWakefulService(context, new Intent(context, SectionSyncService.class));
+        }
+    }
+}
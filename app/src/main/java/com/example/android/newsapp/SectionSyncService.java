@@ -0,0 +1,302 @@
+package com.example.android.newsapp;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteException;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * {@link SectionSyncService} refreshes the sections the user opens most often, and their
+ * thumbnails, in the background, so opening the app is answered from the {@link ArticleStore},
+ * {@link ArticleResponseCache} and {@link ThumbnailCache} instead of a cold network fetch.
+ * <p/>
+ * It runs periodically from an inexact alarm set by {@link #schedule(Context)}, and only syncs
+ * while the device is on an unmetered network and either charging or idle with its screen off.
+ * When the stored results of a section are ordered by newest, only the articles published since
+ * the newest stored one are requested and added to the top of the stored results. The sections,
+ * articles, thumbnails, bytes and duration of the recent runs are returned by
+ * {@link #getRecentRuns(Context)}.
+ * Reference: https://developer.android.com/training/scheduling/alarms
+ */
+public class SectionSyncService extends IntentService {
+
+    /** Log messages tag **/
+    private static final String LOG_TAG = SectionSyncService.class.getSimpleName();
+
+    /** Action of the alarm that starts a sync **/
+    public static final String ACTION_SYNC = "com.example.android.newsapp.action.SYNC_SECTIONS";
+
+    /** SharedPreferences holding the statistics of the recent runs **/
+    private static final String PREFERENCES_NAME = "section_sync";
+    private static final String KEY_RUNS = "runs";
+
+    /** Number of runs whose statistics are kept **/
+    private static final int MAX_RECENT_RUNS = 10;
+
+    public SectionSyncService() {
+        super(SectionSyncService.class.getSimpleName());
+    }
+
+    /**
+     * Sets the inexact repeating alarm that starts a sync, replacing the alarm set before.
+     */
+    public static void schedule(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent syncIntent = PendingIntent.getBroadcast(context, 0,
+                new Intent(context, SectionSyncReceiver.class).setAction(ACTION_SYNC),
+                PendingIntent.FLAG_UPDATE_CURRENT);
+        if (!context.getResources().getBoolean(R.bool.background_sync_enabled)) {
+            alarmManager.cancel(syncIntent);
+            return;
+        }
+        long interval = context.getResources().getInteger(R.integer.sync_interval_minutes) * 60 * 1000L;
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + interval, interval, syncIntent);
+    }
+
+    /**
+     * Returns the statistics of the recent runs, oldest first.
+     */
+    public static List<String> getRecentRuns(Context context) {
+        String runs = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).getString(KEY_RUNS, "");
+        return runs.isEmpty() ? new ArrayList<String>() : new ArrayList<>(Arrays.asList(runs.split("\n")));
+    }
+
+    /**
+     * Syncs the most used sections if the device allows it, and releases the wake lock of the
+     * {@link SectionSyncReceiver}.
+     */
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        try {
+            if (!canSync()) {
+                Log.i(LOG_TAG, "Sync skipped: no unmetered network, or not charging or idle.");
+                return;
+            }
+            syncSections();
+        } finally {
+            SectionSyncReceiver.completeWakefulIntent(intent);
+        }
+    }
+
+    /**
+     * Returns true if the device is on an unmetered network and charging or has its screen off.
+     */
+    private boolean canSync() {
+        ConnectivityManager connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null || !networkInfo.isConnected()
+                || ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager)) {
+            return false;
+        }
+
+        // The battery status is a sticky broadcast, so it is read without a receiver.
+        Intent batteryStatus = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        boolean charging = batteryStatus != null && batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        @SuppressWarnings("deprecation")
+        boolean idle = !powerManager.isScreenOn();
+        return charging || idle;
+    }
+
+    /**
+     * Refreshes the most used sections and records the statistics of the run.
+     */
+    private void syncSections() {
+        long startTime = SystemClock.elapsedRealtime();
+        long bytesBefore = HttpTransport.getThreadWireBytes();
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        String keyword = preferences.getString(getString(R.string.keyword_key), getString(R.string.keyword_default));
+
+        List<String> sections = SectionPrefetcher.loadUsageModel(this)
+                .mostVisited(getResources().getInteger(R.integer.sync_section_count));
+        int syncedSections = 0;
+        int newArticles = 0;
+        int thumbnails = 0;
+        for (String section : sections) {
+            int[] counts = syncSection(section, keyword);
+            if (counts != null) {
+                syncedSections++;
+                newArticles += counts[0];
+                thumbnails += counts[1];
+            }
+        }
+
+        String run = ArticleDates.formatIso(System.currentTimeMillis()) + " sections=" + syncedSections
+                + "/" + sections.size() + " newArticles=" + newArticles + " thumbnails=" + thumbnails
+                + " bytes=" + (HttpTransport.getThreadWireBytes() - bytesBefore)
+                + " millis=" + (SystemClock.elapsedRealtime() - startTime);
+        Log.i(LOG_TAG, "Sync finished: " + run);
+        saveRun(run);
+    }
+
+    /**
+     * Refreshes the first page of a section and downloads its missing thumbnails.
+     *
+     * @return the number of new articles and downloaded thumbnails, or null if the section could
+     * not be fetched
+     */
+    private int[] syncSection(String section, String keyword) {
+        String queryUrl = QueryUtils.buildQueryUrl(this, section, 1, keyword, null);
+        String cacheKey = ArticleResponseCache.keyFor(queryUrl);
+        ArticleStore store = ArticleStore.getInstance(this);
+        try {
+            List<Article> stored = store.getQueryResults(cacheKey);
+
+            // Only asks for the articles published since the newest stored one, unless there are
+            // none or the newer articles fill a page, which may leave out articles between them.
+            boolean incremental = !stored.isEmpty() && QueryUtils.isNewestFirst(queryUrl);
+            List<Article> fetched = incremental ? QueryUtils.fetchNewerArticles(queryUrl, stored, null,
+                    FetchScheduler.PRIORITY_SYNC) : null;
+            int pageSize = QueryUtils.getPageSize(queryUrl);
+            if (fetched == null || (pageSize > 0 && fetched.size() >= pageSize)) {
+                incremental = false;
+                fetched = QueryUtils.fetchArticleData(queryUrl, cacheKey, true, null, null,
+                        FetchScheduler.PRIORITY_SYNC);
+            }
+            if (fetched == null) {
+                return null;
+            }
+
+            List<Article> articles = !incremental ? fetched
+                    : ArticleStore.mergeNewer(fetched, stored, Math.max(stored.size(), pageSize));
+            int newArticles = 0;
+            for (Article article : articles) {
+                if (!containsUrl(stored, article.getUrl())) {
+                    newArticles++;
+                }
+            }
+            store.putQueryResults(cacheKey, articles);
+            // A whole page was cached with its validators when it was fetched, so only the merged
+            // articles of an incremental fetch replace the cached response.
+            if (incremental) {
+                ArticleResponseCache.getInstance().put(cacheKey,
+                        new ArticleResponseCache.Entry(articles, null, null, System.currentTimeMillis()));
+            }
+            CombinedFeed.distribute(this, queryUrl, articles);
+
+            return new int[]{newArticles, downloadThumbnails(articles)};
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem storing the synced articles.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Downloads the missing thumbnails of the articles on the image pool of the
+     * {@link FetchScheduler}, at sync priority, and waits for them. Their bytes are counted for
+     * the calling thread, see {@link HttpTransport#getThreadWireBytes()}.
+     *
+     * @return the number of thumbnails downloaded
+     */
+    private int downloadThumbnails(List<Article> articles) {
+        final ThumbnailCache thumbnailCache = ThumbnailCache.getInstance(this);
+        List<FutureTask<Long>> downloads = new ArrayList<>();
+        for (Article article : articles) {
+            final String url = article.getThumbnailUrl();
+            if (url == null || url.isEmpty() || thumbnailCache.getBytes(url) != null) {
+                continue;
+            }
+            FutureTask<Long> download = new FutureTask<>(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return downloadThumbnail(thumbnailCache, url);
+                }
+            });
+            FetchScheduler.getInstance().execute(FetchScheduler.IMAGES, FetchScheduler.PRIORITY_SYNC, download);
+            downloads.add(download);
+        }
+
+        int thumbnails = 0;
+        try {
+            for (FutureTask<Long> download : downloads) {
+                long bytes = download.get();
+                if (bytes >= 0) {
+                    HttpTransport.addThreadWireBytes(bytes);
+                    thumbnails++;
+                }
+            }
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Problem downloading a thumbnail.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return thumbnails;
+    }
+
+    /**
+     * Downloads a thumbnail into the disk cache.
+     *
+     * @return the bytes received, or -1 if it was not downloaded
+     */
+    private static long downloadThumbnail(ThumbnailCache thumbnailCache, String url) {
+        HttpTransport.Response response = null;
+        try {
+            response = HttpTransport.getInstance().get(new URL(url), null);
+            if (response.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return -1;
+            }
+            thumbnailCache.putBytes(url, response.readBody());
+            return response.getWireBytes();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem downloading a thumbnail.", e);
+            return -1;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    private static boolean containsUrl(List<Article> articles, String url) {
+        for (Article article : articles) {
+            if (article.getUrl().equals(url)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Saves the statistics of a run, keeping those of the recent runs.
+     */
+    private void saveRun(String run) {
+        List<String> runs = getRecentRuns(this);
+        runs.add(run);
+        while (runs.size() > MAX_RECENT_RUNS) {
+            runs.remove(0);
+        }
+        StringBuilder joined = new StringBuilder();
+        for (String recent : runs) {
+            if (joined.length() > 0) {
+                joined.append('\n');
+            }
+            joined.append(recent);
+        }
+        getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_RUNS, joined.toString()).apply();
+    }
+}
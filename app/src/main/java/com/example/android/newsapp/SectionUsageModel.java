@@ -0,0 +1,193 @@
+package com.example.android.newsapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link SectionUsageModel} learns which navigation drawer sections the user opens and in what
+ * order, so {@link SectionPrefetcher} can predict the sections the user is likely to open next.
+ * <p/>
+ * It counts how often each section was opened and how often each section was opened right after
+ * another one. The next section is predicted from the transitions out of the current section,
+ * smoothed with how often each section is opened overall, so a section that has never followed
+ * the current one can still be predicted. The model is saved as a String with {@link #serialize()}.
+ */
+public class SectionUsageModel {
+
+    /** Weight of the overall section frequency when predicting from few transitions **/
+    private static final double SMOOTHING = 1.0;
+
+    /** Number of times each section was opened **/
+    private final Map<String, Integer> mVisitCounts = new HashMap<>();
+
+    /** Number of times each section was opened right after another, by previous section **/
+    private final Map<String, Map<String, Integer>> mTransitionCounts = new HashMap<>();
+
+    /** Total number of sections opened **/
+    private int mTotalVisits;
+
+    /** Section opened last, or null if none has been opened since the model was created **/
+    private String mLastSection;
+
+    /**
+     * Records that the user opened a section. Opening the same section again is not a transition.
+     */
+    public synchronized void recordVisit(String section) {
+        increment(mVisitCounts, section);
+        mTotalVisits++;
+        if (mLastSection != null && !mLastSection.equals(section)) {
+            Map<String, Integer> transitions = mTransitionCounts.get(mLastSection);
+            if (transitions == null) {
+                transitions = new HashMap<>();
+                mTransitionCounts.put(mLastSection, transitions);
+            }
+            increment(transitions, section);
+        }
+        mLastSection = section;
+    }
+
+    /**
+     * Returns the probability estimate that the user opens the section right after the current one.
+     */
+    public synchronized double probability(String current, String next) {
+        if (mTotalVisits == 0) {
+            return 0;
+        }
+        Map<String, Integer> transitions = mTransitionCounts.get(current);
+        int transitionCount = 0;
+        int transitionTotal = 0;
+        if (transitions != null) {
+            transitionCount = count(transitions, next);
+            for (int count : transitions.values()) {
+                transitionTotal += count;
+            }
+        }
+        double frequency = (double) count(mVisitCounts, next) / mTotalVisits;
+        return (transitionCount + SMOOTHING * frequency) / (transitionTotal + SMOOTHING);
+    }
+
+    /**
+     * Returns up to maxCount sections other than the current one, from most to least likely to be
+     * opened next. Sections that have never been opened are not returned.
+     */
+    public synchronized List<String> predictNext(final String current, int maxCount) {
+        List<String> candidates = new ArrayList<>();
+        for (String section : mVisitCounts.keySet()) {
+            if (!section.equals(current)) {
+                candidates.add(section);
+            }
+        }
+        final Map<String, Double> probabilities = new HashMap<>();
+        for (String section : candidates) {
+            probabilities.put(section, probability(current, section));
+        }
+        Collections.sort(candidates, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int byProbability = Double.compare(probabilities.get(b), probabilities.get(a));
+                return byProbability != 0 ? byProbability : a.compareTo(b);
+            }
+        });
+        return candidates.subList(0, Math.min(maxCount, candidates.size()));
+    }
+
+    /**
+     * Returns up to maxCount sections, from the most to the least often opened.
+     */
+    public synchronized List<String> mostVisited(int maxCount) {
+        List<String> sections = new ArrayList<>(mVisitCounts.keySet());
+        Collections.sort(sections, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int byCount = count(mVisitCounts, b) - count(mVisitCounts, a);
+                return byCount != 0 ? byCount : a.compareTo(b);
+            }
+        });
+        return sections.subList(0, Math.min(maxCount, sections.size()));
+    }
+
+    /**
+     * Returns the counts as a String that {@link #deserialize(String)} reads back, such as
+     * "us-news=3,world=2;us-news>world=2,world>us-news=1".
+     */
+    public synchronized String serialize() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : mVisitCounts.entrySet()) {
+            appendCount(builder, entry.getKey(), entry.getValue());
+        }
+        builder.append(';');
+        int transitionsStart = builder.length();
+        for (Map.Entry<String, Map<String, Integer>> from : mTransitionCounts.entrySet()) {
+            for (Map.Entry<String, Integer> to : from.getValue().entrySet()) {
+                if (builder.length() > transitionsStart) {
+                    builder.append(',');
+                }
+                builder.append(from.getKey()).append('>').append(to.getKey()).append('=').append(to.getValue());
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the model saved with {@link #serialize()}, or an empty model if the String is null
+     * or cannot be read.
+     */
+    public static SectionUsageModel deserialize(String serialized) {
+        SectionUsageModel model = new SectionUsageModel();
+        if (serialized == null) {
+            return model;
+        }
+        try {
+            String[] parts = serialized.split(";", -1);
+            for (String entry : parts[0].split(",")) {
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                int separator = entry.lastIndexOf('=');
+                int count = Integer.parseInt(entry.substring(separator + 1));
+                model.mVisitCounts.put(entry.substring(0, separator), count);
+                model.mTotalVisits += count;
+            }
+            if (parts.length > 1) {
+                for (String entry : parts[1].split(",")) {
+                    if (entry.isEmpty()) {
+                        continue;
+                    }
+                    int arrow = entry.indexOf('>');
+                    int separator = entry.lastIndexOf('=');
+                    String from = entry.substring(0, arrow);
+                    Map<String, Integer> transitions = model.mTransitionCounts.get(from);
+                    if (transitions == null) {
+                        transitions = new HashMap<>();
+                        model.mTransitionCounts.put(from, transitions);
+                    }
+                    transitions.put(entry.substring(arrow + 1, separator),
+                            Integer.parseInt(entry.substring(separator + 1)));
+                }
+            }
+        } catch (RuntimeException e) {
+            return new SectionUsageModel();
+        }
+        return model;
+    }
+
+    private static void appendCount(StringBuilder builder, String key, int count) {
+        if (builder.length() > 0) {
+            builder.append(',');
+        }
+        builder.append(key).append('=').append(count);
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        counts.put(key, count(counts, key) + 1);
+    }
+
+    private static int count(Map<String, Integer> counts, String key) {
+        Integer count = counts.get(key);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.android.newsapp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link StringDictionary} gives every distinct String a small int id, so values that repeat across
+ * many articles, such as section names like "US news" and contributor names, are stored once and
+ * referred to by id or by the one shared String instance.
+ * <p/>
+ * Strings are never removed. The shared dictionary returned by {@link #getShared()} only holds
+ * sections and contributors, whose number stays small compared to the number of articles.
+ */
+public final class StringDictionary {
+
+    /** Id of a null String **/
+    public static final int NO_ID = -1;
+
+    /** The dictionary of sections and contributors shared by the whole app **/
+    private static final StringDictionary sShared = new StringDictionary();
+
+    /** Ids by String **/
+    private final Map<String, Integer> mIds = new HashMap<>();
+
+    /** Strings by id **/
+    private final List<String> mStrings = new ArrayList<>();
+
+    /**
+     * Returns the dictionary of sections and contributors shared by the whole app.
+     */
+    public static StringDictionary getShared() {
+        return sShared;
+    }
+
+    /**
+     * Returns the id of the String, adding it to the dictionary if it is new, or {@link #NO_ID}
+     * for null.
+     */
+    public synchronized int idOf(String value) {
+        if (value == null) {
+            return NO_ID;
+        }
+        Integer id = mIds.get(value);
+        if (id == null) {
+            id = mStrings.size();
+            mIds.put(value, id);
+            mStrings.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the String of the id, or null for {@link #NO_ID}.
+     */
+    public synchronized String get(int id) {
+        return id == NO_ID ? null : mStrings.get(id);
+    }
+
+    /**
+     * Returns the instance of the String held by the dictionary, so equal values share one
+     * instance, or null for null.
+     */
+    public synchronized String intern(String value) {
+        return get(idOf(value));
+    }
+
+    /**
+     * Returns the number of Strings in the dictionary.
+     */
+    public synchronized int size() {
+        return mStrings.size();
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.android.newsapp;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link ThumbnailCache} keeps thumbnails in two tiers, so revisiting a section does not
+ * download or decode the same images again:
+ * <ul>
+ * <li>a memory cache of decoded Bitmaps, limited by the number of bytes the Bitmaps use</li>
+ * <li>a {@link ThumbnailDiskCache} of the downloaded image files, which survives the app being closed</li>
+ * </ul>
+ * Bitmaps that leave the memory cache are handed to a {@link BitmapPool}, so their memory can be
+ * reused for new thumbnails once no ImageView displays them.
+ */
+public class ThumbnailCache {
+
+    /** Log messages tag **/
+    private static final String LOG_TAG = ThumbnailCache.class.getSimpleName();
+
+    /** Part of the maximum heap size used by the memory cache **/
+    private static final int MEMORY_CACHE_HEAP_DIVISOR = 8;
+
+    /** Part of the memory cache size used by the pool of reusable Bitmaps **/
+    private static final int BITMAP_POOL_DIVISOR = 4;
+
+    /** Maximum size of the disk cache in bytes **/
+    private static final long DISK_CACHE_SIZE = 10 * 1024 * 1024;
+
+    /** Name of the disk cache directory inside the app cache directory **/
+    private static final String DISK_CACHE_DIRECTORY = "thumbnails";
+
+    /** The cache shared by the whole app **/
+    private static ThumbnailCache sInstance;
+
+    /** Decoded thumbnails by URL, limited by the byte count of the Bitmaps **/
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    /** Bitmaps that are no longer cached or displayed, kept so their memory can be reused **/
+    private final BitmapPool mBitmapPool;
+
+    /** Directory of the disk cache **/
+    private final File mDiskCacheDirectory;
+
+    /** Downloaded thumbnail files, opened on first use because opening reads the disk **/
+    private ThumbnailDiskCache mDiskCache;
+
+    /**
+     * Returns the cache shared by the whole app.
+     */
+    public static synchronized ThumbnailCache getInstance(Context context) {
+        if (sInstance == null) {
+            int maxMemoryBytes = (int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_DIVISOR);
+            File directory = new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIRECTORY);
+            sInstance = new ThumbnailCache(maxMemoryBytes, directory);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Create a {@link ThumbnailCache}.
+     *
+     * @param maxMemoryBytes maximum number of bytes used by the Bitmaps in the memory cache
+     * @param diskCacheDirectory directory of the disk cache
+     */
+    ThumbnailCache(int maxMemoryBytes, File diskCacheDirectory) {
+        mDiskCacheDirectory = diskCacheDirectory;
+        mBitmapPool = new BitmapPool(maxMemoryBytes / BITMAP_POOL_DIVISOR);
+        mMemoryCache = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String url, Bitmap bitmap) {
+                return BitmapPool.sizeOf(bitmap);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String url, Bitmap oldBitmap, Bitmap newBitmap) {
+                if (oldBitmap != newBitmap) {
+                    mBitmapPool.onRemovedFromCache(oldBitmap);
+                }
+            }
+        };
+    }
+
+    /** Get the pool of Bitmaps that can be decoded into **/
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Returns the decoded thumbnail for the URL from memory, or null if it is not in memory.
+     * Safe to call on the main thread.
+     */
+    public Bitmap getBitmap(String url) {
+        return mMemoryCache.get(url);
+    }
+
+    /**
+     * Returns the decoded thumbnail for the URL from memory and acquires it in the
+     * {@link BitmapPool}, or null if it is not in memory. The Bitmap cannot be reused between
+     * the lookup and the acquire, and the caller must release it once it is displayed.
+     */
+    public Bitmap acquireBitmap(String url) {
+        // An eviction reports the Bitmap to the pool under the same lock, so it waits for the acquire.
+        synchronized (mBitmapPool) {
+            Bitmap bitmap = mMemoryCache.get(url);
+            if (bitmap != null) {
+                mBitmapPool.acquire(bitmap);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * Keeps the decoded thumbnail for the URL in memory.
+     */
+    public void putBitmap(String url, Bitmap bitmap) {
+        mMemoryCache.put(url, bitmap);
+    }
+
+    /**
+     * Returns the downloaded image file for the URL from disk, or null if it is not on disk.
+     * Reads the disk, so it must not be called on the main thread.
+     */
+    public byte[] getBytes(String url) {
+        return getDiskCache().get(ThumbnailDiskCache.keyForUrl(url));
+    }
+
+    /**
+     * Stores the downloaded image file for the URL on disk.
+     * Writes the disk, so it must not be called on the main thread.
+     */
+    public void putBytes(String url, byte[] data) {
+        try {
+            getDiskCache().put(ThumbnailDiskCache.keyForUrl(url), data);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing a thumbnail to the disk cache.", e);
+        }
+    }
+
+    /**
+     * Releases memory when the system asks for it, called from
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}. The disk cache is kept,
+     * so released thumbnails are decoded again from disk instead of being downloaded.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            // The app is in the background and likely to be killed soon.
+            mMemoryCache.evictAll();
+            mBitmapPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mMemoryCache.trimToSize(mMemoryCache.maxSize() / 2);
+            mBitmapPool.clear();
+        }
+    }
+
+    /** Get the number of thumbnails found in memory **/
+    public int getMemoryHitCount() {
+        return mMemoryCache.hitCount();
+    }
+
+    /** Get the number of thumbnails not found in memory **/
+    public int getMemoryMissCount() {
+        return mMemoryCache.missCount();
+    }
+
+    /** Get the number of thumbnails removed from memory to stay within its size **/
+    public int getMemoryEvictionCount() {
+        return mMemoryCache.evictionCount();
+    }
+
+    /** Get the number of thumbnails found on disk **/
+    public int getDiskHitCount() {
+        return getDiskCache().hitCount();
+    }
+
+    /** Get the number of thumbnails not found on disk, which had to be downloaded **/
+    public int getDiskMissCount() {
+        return getDiskCache().missCount();
+    }
+
+    /** Get the number of thumbnails removed from disk to stay within its size **/
+    public int getDiskEvictionCount() {
+        return getDiskCache().evictionCount();
+    }
+
+    /**
+     * Returns a summary of the cache sizes and counters, used for logging.
+     */
+    @Override
+    public String toString() {
+        ThumbnailDiskCache diskCache = getDiskCache();
+        return "memory " + mMemoryCache.size() + "/" + mMemoryCache.maxSize() + " bytes"
+                + " (hits " + getMemoryHitCount()
+                + ", misses " + getMemoryMissCount()
+                + ", evictions " + getMemoryEvictionCount() + "), "
+                + "pool " + mBitmapPool.size() + " bytes"
+                + " (reused " + mBitmapPool.hitCount()
+                + ", allocated " + mBitmapPool.missCount() + "), "
+                + "disk " + diskCache.size() + "/" + diskCache.maxSize() + " bytes"
+                + " (hits " + diskCache.hitCount()
+                + ", misses " + diskCache.missCount()
+                + ", evictions " + diskCache.evictionCount() + ")";
+    }
+
+    /**
+     * Opens the disk cache the first time it is used.
+     */
+    private synchronized ThumbnailDiskCache getDiskCache() {
+        if (mDiskCache == null) {
+            mDiskCache = new ThumbnailDiskCache(mDiskCacheDirectory, DISK_CACHE_SIZE);
+        }
+        return mDiskCache;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.newsapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+/**
+ * {@link ThumbnailDecoder} decodes downloaded thumbnails at the size they are displayed instead of
+ * at full resolution.
+ * <p/>
+ * The image bounds are read first, then the image is decoded with an inSampleSize so it is no
+ * smaller than the target size. It can decode into {@link Bitmap.Config#RGB_565}, which uses half
+ * the memory of ARGB_8888 and suits photos without transparency, and it decodes into Bitmaps
+ * from a {@link BitmapPool} when possible.
+ * Reference: https://developer.android.com/topic/performance/graphics/load-bitmap
+ */
+public class ThumbnailDecoder {
+
+    /** Log messages tag **/
+    private static final String LOG_TAG = ThumbnailDecoder.class.getSimpleName();
+
+    /** Bitmaps that can be decoded into **/
+    private final BitmapPool mBitmapPool;
+
+    /** Size in pixels the thumbnails are displayed at **/
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+
+    /** Config of the decoded Bitmaps **/
+    private final Bitmap.Config mConfig;
+
+    /**
+     * Create a {@link ThumbnailDecoder}.
+     *
+     * @param bitmapPool of Bitmaps that can be decoded into
+     * @param targetWidth width in pixels the thumbnails are displayed at
+     * @param targetHeight height in pixels the thumbnails are displayed at
+     * @param useRgb565 true to decode into RGB_565 instead of ARGB_8888
+     */
+    public ThumbnailDecoder(BitmapPool bitmapPool, int targetWidth, int targetHeight, boolean useRgb565) {
+        mBitmapPool = bitmapPool;
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+        mConfig = useRgb565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Decodes the image file, or returns null if it is not a valid image.
+     */
+    public Bitmap decode(byte[] data) {
+        // Reads only the bounds of the image, without allocating memory for its pixels.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                mTargetWidth, mTargetHeight);
+        options.inPreferredConfig = mConfig;
+        options.inMutable = true;
+        options.inBitmap = mBitmapPool.get(options);
+
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled Bitmap could not be reused for this image, so decode into a new one.
+            Log.w(LOG_TAG, "Could not decode into a pooled Bitmap.", e);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * Returns the largest power of two sample size that keeps both sides of the decoded image at
+     * least as large as the target size. A target side of 0 or less is ignored.
+     */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        while (isLargeEnough(width / (inSampleSize * 2), targetWidth)
+                && isLargeEnough(height / (inSampleSize * 2), targetHeight)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static boolean isLargeEnough(int size, int targetSize) {
+        return size >= Math.max(targetSize, 1);
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.android.newsapp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ThumbnailDiskCache} keeps downloaded thumbnail files in a directory, limited to a
+ * maximum number of bytes. When the limit is exceeded, the least recently used files are deleted.
+ * <p/>
+ * A file is first written under a temporary name and only renamed to its final name once it has
+ * been completely written, so a crash can never leave a partial thumbnail behind. Temporary files
+ * left over from a crash are deleted when the cache is opened. The order of use is kept in the
+ * last modified time of the files, so it survives the process being killed.
+ */
+public class ThumbnailDiskCache {
+
+    /** Suffix of files that are still being written **/
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Directory containing the cached files **/
+    private final File mDirectory;
+
+    /** Maximum number of bytes kept in the directory **/
+    private final long mMaxBytes;
+
+    /** Size of each cached file by key, ordered from least to most recently used **/
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(0, 0.75f, true);
+
+    /** Total size of the cached files **/
+    private long mSize;
+
+    /** Counters for cache hits, misses and evicted files **/
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /** Used to give every temporary file a unique name **/
+    private final AtomicInteger mTempCounter = new AtomicInteger();
+
+    /**
+     * Opens the cache in the directory, creating the directory if it does not exist.
+     *
+     * @param directory that contains the cached files
+     * @param maxBytes maximum number of bytes kept in the directory
+     */
+    public ThumbnailDiskCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        open();
+    }
+
+    /**
+     * Returns the cached bytes for the key, or null if they are not cached.
+     */
+    public byte[] get(String key) {
+        File file = new File(mDirectory, key);
+        synchronized (this) {
+            if (mEntries.get(key) == null) {
+                mMissCount++;
+                return null;
+            }
+            // Marks the file as recently used for the next time the cache is opened.
+            file.setLastModified(System.currentTimeMillis());
+        }
+        try {
+            byte[] data = readFile(file);
+            synchronized (this) {
+                mHitCount++;
+            }
+            return data;
+        } catch (IOException e) {
+            // The file was evicted while it was being read, or it could not be read.
+            synchronized (this) {
+                mMissCount++;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Stores the bytes for the key, replacing any bytes already cached, and evicts the least
+     * recently used files if the cache is now too large.
+     */
+    public void put(String key, byte[] data) throws IOException {
+        File tempFile = new File(mDirectory, key + "." + mTempCounter.incrementAndGet() + TEMP_SUFFIX);
+        try {
+            writeFile(tempFile, data);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        synchronized (this) {
+            File file = new File(mDirectory, key);
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Could not rename " + tempFile + " to " + file);
+            }
+            Long previousSize = mEntries.put(key, (long) data.length);
+            if (previousSize != null) {
+                mSize -= previousSize;
+            }
+            mSize += data.length;
+            trimToSize(mMaxBytes);
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the cache is no larger than the given size.
+     */
+    public synchronized void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(mDirectory, eldest.getKey()).delete();
+            mSize -= eldest.getValue();
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    /** Get the total size of the cached files in bytes **/
+    public synchronized long size() {
+        return mSize;
+    }
+
+    /** Get the maximum size of the cache in bytes **/
+    public long maxSize() {
+        return mMaxBytes;
+    }
+
+    /** Get the number of cached files **/
+    public synchronized int entryCount() {
+        return mEntries.size();
+    }
+
+    /** Get the number of times cached bytes were returned **/
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    /** Get the number of times bytes were requested that were not cached **/
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    /** Get the number of files deleted to stay within the maximum size **/
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Returns a key that is safe to use as a file name, built from the MD5 hash of the URL.
+     */
+    public static String keyForUrl(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // Every Java platform supports MD5 and UTF-8.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Reads the existing files in the order they were last used and deletes temporary files
+     * left over from a crash.
+     */
+    private synchronized void open() {
+        mDirectory.mkdirs();
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else if (file.isFile()) {
+                mEntries.put(file.getName(), file.length());
+                mSize += file.length();
+            }
+        }
+        trimToSize(mMaxBytes);
+    }
+
+    /**
+     * Writes the bytes to the file and makes sure they reach the disk before it is renamed.
+     */
+    private static void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(data);
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Reads the whole file into a byte array.
+     */
+    private static byte[] readFile(File file) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.android.newsapp;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link ThumbnailFetcher} downloads article thumbnails on the image pool of the
+ * {@link FetchScheduler}, so several thumbnails are downloaded at the same time instead of one
+ * after another, and thumbnails on screen are downloaded before those near the viewport.
+ * <p/>
+ * Thumbnails are read from the {@link ThumbnailCache} first and only downloaded when they are not
+ * cached. Downloaded files are stored on disk, decoded at display size by a {@link ThumbnailDecoder}
+ * and kept in memory.
+ * <p/>
+ * Downloads are sent through the shared {@link HttpTransport}, so they reuse kept-alive connections
+ * to the image server. Every download has its own connect and read timeout. A single download is
+ * stopped by cancelling the {@link Future} returned from {@link #fetch(String, int, Callback)}, and
+ * {@link #cancel()} stops every download that is still queued or running.
+ */
+public class ThumbnailFetcher {
+
+    /** Log messages tag **/
+    private static final String LOG_TAG = ThumbnailFetcher.class.getSimpleName();
+
+    /** Default connect and read timeouts in milliseconds for a single thumbnail **/
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_READ_TIMEOUT = 5000;
+
+    /**
+     * Receives the result of a download on the worker thread that performed it. It is not called
+     * when the download was cancelled.
+     */
+    public interface Callback {
+        /**
+         * @param url of the thumbnail
+         * @param bitmap of the thumbnail, or null if the download failed. It is acquired in the
+         *               {@link BitmapPool}, so it is not reused before it is displayed, and the
+         *               callback must release it once it has been set on its ImageViews.
+         */
+        void onThumbnailFetched(String url, Bitmap bitmap);
+    }
+
+    /** Cache of downloaded and decoded thumbnails **/
+    private final ThumbnailCache mThumbnailCache;
+
+    /** Decodes the thumbnails at the size they are displayed **/
+    private final ThumbnailDecoder mThumbnailDecoder;
+
+    /** Timeouts applied to every download **/
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+
+    /** Downloads that are queued or running, so they can be cancelled **/
+    private final Set<Future<Bitmap>> mPendingTasks =
+            Collections.newSetFromMap(new ConcurrentHashMap<Future<Bitmap>, Boolean>());
+
+    /**
+     * Create a {@link ThumbnailFetcher} with the default timeouts.
+     *
+     * @param thumbnailCache of downloaded and decoded thumbnails
+     * @param thumbnailDecoder that decodes the downloaded thumbnails
+     */
+    public ThumbnailFetcher(ThumbnailCache thumbnailCache, ThumbnailDecoder thumbnailDecoder) {
+        this(thumbnailCache, thumbnailDecoder, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Create a {@link ThumbnailFetcher}.
+     *
+     * @param thumbnailCache of downloaded and decoded thumbnails
+     * @param thumbnailDecoder that decodes the downloaded thumbnails
+     * @param connectTimeout connect timeout of a single download in milliseconds
+     * @param readTimeout read timeout of a single download in milliseconds
+     */
+    public ThumbnailFetcher(ThumbnailCache thumbnailCache, ThumbnailDecoder thumbnailDecoder,
+                            int connectTimeout, int readTimeout) {
+        mThumbnailCache = thumbnailCache;
+        mThumbnailDecoder = thumbnailDecoder;
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    /**
+     * Queues the download of a single thumbnail.
+     *
+     * @param url of the thumbnail
+     * @param priority of the download in the {@link FetchScheduler}, such as
+     *                 {@link FetchScheduler#PRIORITY_VISIBLE}
+     * @param callback that receives the Bitmap on the worker thread
+     * @return Future that stops the download, including an open connection, when cancelled
+     */
+    public Future<Bitmap> fetch(final String url, int priority, final Callback callback) {
+        final Download download = new Download(url);
+        DownloadTask task = new DownloadTask(download) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                // Drops a download that has not started from the queue of the scheduler.
+                if (mToken != null) {
+                    mToken.cancel();
+                }
+                // Interrupting the thread does not stop a blocking socket read, so disconnect as well.
+                download.disconnect();
+                // A download that finished first hands its Bitmap to the callback instead.
+                if (cancelled) {
+                    download.unpin();
+                }
+                return cancelled;
+            }
+
+            @Override
+            protected void done() {
+                mPendingTasks.remove(this);
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Problem downloading a thumbnail.", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // Hands the pinned Bitmap over to the callback, which releases it once displayed.
+                callback.onThumbnailFetched(url, download.takePinned());
+            }
+        };
+        mPendingTasks.add(task);
+        task.mToken = FetchScheduler.getInstance().execute(FetchScheduler.IMAGES, priority, task);
+        return task;
+    }
+
+    /**
+     * Raises the priority of a download returned from {@link #fetch(String, int, Callback)} that
+     * has not started yet, such as when its thumbnail scrolls into view.
+     */
+    public void raisePriority(Future<Bitmap> future, int priority) {
+        if (future instanceof DownloadTask) {
+            FetchScheduler.Token token = ((DownloadTask) future).mToken;
+            if (token != null) {
+                token.raisePriority(priority);
+            }
+        }
+    }
+
+    /**
+     * Cancels every download that is queued or running. Downloads that have not started are
+     * dropped and open connections are closed.
+     */
+    public void cancel() {
+        for (Future<Bitmap> future : mPendingTasks) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Reads one thumbnail from the disk cache, or downloads it, and decodes it on a worker thread.
+     * Reference: https://stackoverflow.com/questions/51587354/how-to-replace-low-res-image-reference-at-end-of-url-string-with-the-higher-res#51587860
+     */
+    private class Download implements Callable<Bitmap> {
+        private final String mUrl;
+
+        /** Response while the download is running, so a cancel can close its connection **/
+        private volatile HttpTransport.Response mResponse;
+
+        /** Decoded Bitmap, pinned in the pool until it is handed to the callback or cancelled **/
+        private final AtomicReference<Bitmap> mPinned = new AtomicReference<>();
+
+        /** Set once the download is cancelled, so a Bitmap decoded afterwards is not left pinned **/
+        private volatile boolean mCancelled;
+
+        private Download(String url) {
+            mUrl = url;
+        }
+
+        @Override
+        public Bitmap call() throws IOException {
+            byte[] data = mThumbnailCache.getBytes(mUrl);
+            if (data == null) {
+                data = download();
+                if (data == null) {
+                    return null;
+                }
+                mThumbnailCache.putBytes(mUrl, data);
+            }
+            long decodeStart = System.nanoTime();
+            Bitmap bitmap = mThumbnailDecoder.decode(data);
+            PipelineMetrics.getInstance().recordSince(PipelineMetrics.THUMBNAIL_DECODE, decodeStart);
+            if (bitmap != null) {
+                // Pinned before it enters the memory cache, so an eviction by another download
+                // cannot make it reusable before it is displayed.
+                mThumbnailCache.getBitmapPool().acquire(bitmap);
+                mPinned.set(bitmap);
+                mThumbnailCache.putBitmap(mUrl, bitmap);
+                if (mCancelled) {
+                    unpin();
+                }
+            }
+            return bitmap;
+        }
+
+        /**
+         * Returns the downloaded image file, or null if the server did not return it.
+         */
+        private byte[] download() throws IOException {
+            HttpTransport.Response response = null;
+            try {
+                response = HttpTransport.getInstance().get(new URL(mUrl), null, mConnectTimeout, mReadTimeout);
+                mResponse = response;
+
+                if (response.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    Log.e(LOG_TAG, "Error response code: " + response.getResponseCode());
+                    return null;
+                }
+                byte[] data = response.readBody();
+                response.close();
+                PipelineMetrics.getInstance().recordResponse(PipelineMetrics.THUMBNAIL, response);
+                return data;
+            } finally {
+                mResponse = null;
+                if (response != null) {
+                    response.close();
+                }
+            }
+        }
+
+        private void disconnect() {
+            HttpTransport.Response response = mResponse;
+            if (response != null) {
+                response.abort();
+            }
+        }
+
+        /**
+         * Returns the pinned Bitmap and leaves releasing it to the caller, or null if there is none.
+         */
+        private Bitmap takePinned() {
+            return mPinned.getAndSet(null);
+        }
+
+        /**
+         * Releases the pinned Bitmap of a cancelled download.
+         */
+        private void unpin() {
+            mCancelled = true;
+            Bitmap bitmap = takePinned();
+            if (bitmap != null) {
+                mThumbnailCache.getBitmapPool().release(bitmap);
+            }
+        }
+    }
+
+    /**
+     * A queued or running download and its token in the {@link FetchScheduler}.
+     */
+    private static class DownloadTask extends FutureTask<Bitmap> {
+        volatile FetchScheduler.Token mToken;
+
+        private DownloadTask(Callable<Bitmap> download) {
+            super(download);
+        }
+    }
+}
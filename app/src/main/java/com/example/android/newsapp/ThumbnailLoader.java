@@ -0,0 +1,282 @@
+package com.example.android.newsapp;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * {@link ThumbnailLoader} loads article thumbnails into {@link ImageView}s when a row is bound,
+ * so the text of a row is displayed right away and its image fills in once it has downloaded.
+ * Thumbnails already in the memory of the {@link ThumbnailCache} are set immediately.
+ * <p/>
+ * The Bitmap displayed by each ImageView is reported to the {@link BitmapPool}, so a Bitmap is
+ * never decoded into while it is on screen. {@link #releaseAll()} removes every thumbnail when the
+ * rows are torn down, so their Bitmaps can be reused by the next screen.
+ * <p/>
+ * Each ImageView has at most one request at a time. Starting a new request or calling
+ * {@link #cancel(ImageView)} cancels the previous one, and a result is only set if its request
+ * is still the current request of the ImageView, so a recycled row never shows a stale image.
+ * <p/>
+ * Thumbnails of rows about to scroll into view can be preloaded with {@link #preload(String)}
+ * at a lower priority. When the row is bound, its request takes over the preload and raises it
+ * to visible priority instead of downloading the thumbnail again.
+ * All methods must be called on the main thread.
+ */
+public class ThumbnailLoader {
+
+    /** Cache of downloaded and decoded thumbnails **/
+    private final ThumbnailCache mThumbnailCache;
+
+    /** Bitmaps that can be decoded into once they are no longer displayed **/
+    private final BitmapPool mBitmapPool;
+
+    /** Downloads the thumbnails **/
+    private final ThumbnailFetcher mThumbnailFetcher;
+
+    /** Delivers downloaded thumbnails to the main thread **/
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Requests that have not finished yet, by thumbnail URL **/
+    private final Map<String, List<Request>> mActiveRequests = new HashMap<>();
+
+    /** ImageViews that display a thumbnail **/
+    private final Set<ImageView> mDisplayingViews = new HashSet<>();
+
+    /** Preloads that have not finished yet, by thumbnail URL **/
+    private final Map<String, Future<Bitmap>> mPreloads = new HashMap<>();
+
+    /** Delivers every finished download to the requests of its URL on the main thread **/
+    private final ThumbnailFetcher.Callback mDelivery = new ThumbnailFetcher.Callback() {
+        @Override
+        public void onThumbnailFetched(final String url, final Bitmap bitmap) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(url, bitmap);
+                    // The ImageViews hold their own use of the Bitmap now, so the pin is dropped.
+                    if (bitmap != null) {
+                        mBitmapPool.release(bitmap);
+                    }
+                }
+            });
+        }
+    };
+
+    /**
+     * Create a {@link ThumbnailLoader} that uses the app {@link ThumbnailCache}.
+     *
+     * @param context used to find the cache directory and the thumbnail size
+     */
+    public ThumbnailLoader(Context context) {
+        mThumbnailCache = ThumbnailCache.getInstance(context);
+        mBitmapPool = mThumbnailCache.getBitmapPool();
+
+        // Thumbnails are decoded at the width of the thumbnail ImageView in list_item.xml.
+        Resources resources = context.getResources();
+        ThumbnailDecoder thumbnailDecoder = new ThumbnailDecoder(mBitmapPool,
+                resources.getDimensionPixelSize(R.dimen.thumbnail_width), 0,
+                resources.getBoolean(R.bool.thumbnail_rgb_565));
+        mThumbnailFetcher = new ThumbnailFetcher(mThumbnailCache, thumbnailDecoder);
+    }
+
+    /**
+     * Clears the ImageView and starts loading the thumbnail into it, replacing any earlier request.
+     *
+     * @param url of the thumbnail, or an empty String if the article has no thumbnail
+     * @param imageView that displays the thumbnail
+     */
+    public void load(String url, ImageView imageView) {
+        cancel(imageView);
+
+        if (TextUtils.isEmpty(url)) {
+            setBitmap(imageView, null);
+            return;
+        }
+
+        // Sets a thumbnail that is already decoded in memory without waiting for a worker thread.
+        // It is acquired with the lookup, so a download evicting it meanwhile cannot make it reusable.
+        Bitmap cachedBitmap = mThumbnailCache.acquireBitmap(url);
+        setBitmap(imageView, cachedBitmap);
+        if (cachedBitmap != null) {
+            mBitmapPool.release(cachedBitmap);
+            return;
+        }
+
+        Request request = new Request(url, imageView);
+        imageView.setTag(R.id.thumbnail_request, request);
+        List<Request> requests = mActiveRequests.get(url);
+        if (requests == null) {
+            requests = new ArrayList<>(1);
+            mActiveRequests.put(url, requests);
+        }
+        requests.add(request);
+        Future<Bitmap> preload = mPreloads.get(url);
+        if (preload != null) {
+            mThumbnailFetcher.raisePriority(preload, FetchScheduler.PRIORITY_VISIBLE);
+            request.mFuture = preload;
+        } else {
+            request.mFuture = mThumbnailFetcher.fetch(url, FetchScheduler.PRIORITY_VISIBLE, mDelivery);
+        }
+    }
+
+    /**
+     * Starts downloading a thumbnail that is about to scroll into view, unless it is already in
+     * memory or being loaded, behind the thumbnails on screen.
+     *
+     * @param url of the thumbnail, or an empty String if the article has no thumbnail
+     */
+    public void preload(String url) {
+        if (TextUtils.isEmpty(url) || mPreloads.containsKey(url) || mActiveRequests.containsKey(url)
+                || mThumbnailCache.getBitmap(url) != null) {
+            return;
+        }
+        mPreloads.put(url, mThumbnailFetcher.fetch(url, FetchScheduler.PRIORITY_NEAR_VIEWPORT, mDelivery));
+    }
+
+    /**
+     * Cancels the request of the ImageView, such as when its row is recycled.
+     */
+    public void cancel(ImageView imageView) {
+        Object tag = imageView.getTag(R.id.thumbnail_request);
+        if (tag instanceof Request) {
+            ((Request) tag).cancel();
+        }
+    }
+
+    /**
+     * Cancels the request of the ImageView and removes its thumbnail, such as when its row is
+     * recycled, so the Bitmap can be reused once it leaves the memory cache.
+     */
+    public void clear(ImageView imageView) {
+        cancel(imageView);
+        setBitmap(imageView, null);
+    }
+
+    /**
+     * Cancels every request and preload that has not finished yet.
+     */
+    public void cancelAll() {
+        List<Request> requests = new ArrayList<>();
+        for (List<Request> urlRequests : mActiveRequests.values()) {
+            requests.addAll(urlRequests);
+        }
+        for (Request request : requests) {
+            request.cancel();
+        }
+        for (Future<Bitmap> preload : mPreloads.values()) {
+            preload.cancel(true);
+        }
+        mPreloads.clear();
+    }
+
+    /**
+     * Cancels every request and preload and removes every thumbnail that is displayed, such as
+     * when the rows are torn down, so the Bitmaps can be reused once they leave the memory cache.
+     */
+    public void releaseAll() {
+        cancelAll();
+        for (ImageView imageView : new HashSet<>(mDisplayingViews)) {
+            setBitmap(imageView, null);
+        }
+    }
+
+    /**
+     * Sets a downloaded thumbnail on every ImageView whose current request is for its URL.
+     */
+    private void deliver(String url, Bitmap bitmap) {
+        mPreloads.remove(url);
+        List<Request> requests = mActiveRequests.remove(url);
+        if (requests == null) {
+            return;
+        }
+        for (Request request : requests) {
+            request.deliver(bitmap);
+        }
+    }
+
+    /**
+     * Sets the Bitmap on the ImageView and tells the {@link BitmapPool} which Bitmap it replaces.
+     */
+    private void setBitmap(ImageView imageView, Bitmap bitmap) {
+        Object previous = imageView.getTag(R.id.thumbnail_bitmap);
+        if (previous == bitmap) {
+            return;
+        }
+        if (bitmap != null) {
+            mBitmapPool.acquire(bitmap);
+            mDisplayingViews.add(imageView);
+        } else {
+            mDisplayingViews.remove(imageView);
+        }
+        imageView.setImageBitmap(bitmap);
+        imageView.setTag(R.id.thumbnail_bitmap, bitmap);
+        if (previous instanceof Bitmap) {
+            mBitmapPool.release((Bitmap) previous);
+        }
+    }
+
+    /**
+     * A single thumbnail request for an ImageView.
+     */
+    private class Request {
+        private final String mUrl;
+        private final ImageView mImageView;
+        private Future<Bitmap> mFuture;
+
+        private Request(String url, ImageView imageView) {
+            mUrl = url;
+            mImageView = imageView;
+        }
+
+        /**
+         * Sets the Bitmap only if this is still the current request of the ImageView.
+         */
+        private void deliver(Bitmap bitmap) {
+            if (mImageView.getTag(R.id.thumbnail_request) == this) {
+                mImageView.setTag(R.id.thumbnail_request, null);
+                setBitmap(mImageView, bitmap);
+            }
+        }
+
+        private void cancel() {
+            List<Request> requests = mActiveRequests.get(mUrl);
+            if (requests != null) {
+                requests.remove(this);
+                if (requests.isEmpty()) {
+                    mActiveRequests.remove(mUrl);
+                    requests = null;
+                }
+            }
+            if (mImageView.getTag(R.id.thumbnail_request) == this) {
+                mImageView.setTag(R.id.thumbnail_request, null);
+            }
+            if (mFuture == null) {
+                return;
+            }
+            // A preload taken over by another request of the URL keeps running for it.
+            if (requests != null) {
+                for (Request other : requests) {
+                    if (other.mFuture == mFuture) {
+                        return;
+                    }
+                }
+            }
+            mFuture.cancel(true);
+            if (mPreloads.get(mUrl) == mFuture) {
+                mPreloads.remove(mUrl);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the token bucket, priorities and backoff of {@link ApiRateLimiter}.
+ */
+public class ApiRateLimiterTest {
+
+    /** Start of a day, so tests do not cross midnight **/
+    private static final long START = 1542672000000L;
+
+    @Test
+    public void tryAcquire_admitsTheRatePerSecond() {
+        FakeClockLimiter limiter = new FakeClockLimiter();
+        limiter.setQuota(2, 100);
+
+        assertTrue(limiter.tryAcquire(ApiRateLimiter.PRIORITY_FOREGROUND));
+        assertTrue(limiter.tryAcquire(ApiRateLimiter.PRIORITY_FOREGROUND));
+        assertFalse(limiter.tryAcquire(ApiRateLimiter.PRIORITY_FOREGROUND));
+
+        limiter.now += 500;
+        assertTrue(limiter.tryAcquire(ApiRateLimiter.PRIORITY_FOREGROUND));
+    }
+
+    @Test
+    public void tryAcquire_keepsTheLastPartOfTheDailyQuotaForTheForeground() {
+        FakeClockLimiter limiter = new FakeClockLimiter();
+        limiter.setQuota(1000, 10);
+
+        for (int i = 0; i < 9; i++) {
+            assertTrue(limiter.tryAcquire(ApiRateLimiter.PRIORITY_BACKGROUND));
+        }
+        assertFalse(limiter.tryAcquire(ApiRateLimiter.PRIORITY_BACKGROUND));
+        assertTrue(limiter.tryAcquire(ApiRateLimiter.PRIORITY_FOREGROUND));
+        assertFalse(limiter.tryAcquire(ApiRateLimiter.PRIORITY_FOREGROUND));
+
+        // The count starts again on the next day.
+        limiter.now += 24 * 60 * 60 * 1000L;
+        assertTrue(limiter.tryAcquire(ApiRateLimiter.PRIORITY_BACKGROUND));
+        assertEquals(1, limiter.getDailyCount());
+    }
+
+    @Test
+    public void onRejected_blocksUntilRetryAfterAndHalvesTheRate() {
+        FakeClockLimiter limiter = new FakeClockLimiter();
+        limiter.setQuota(10, 100);
+
+        limiter.onRejected(3000);
+
+        assertEquals(5.0, limiter.getRate(), 0.001);
+        limiter.now += 2999;
+        assertFalse(limiter.tryAcquire(ApiRateLimiter.PRIORITY_FOREGROUND));
+        limiter.now += 1;
+        assertTrue(limiter.tryAcquire(ApiRateLimiter.PRIORITY_FOREGROUND));
+
+        limiter.onSuccess();
+        assertEquals(5.2, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void backoffMillis_growsExponentiallyWithJitterUpToALimit() {
+        assertEquals(500, ApiRateLimiter.backoffMillis(1, 0));
+        assertEquals(1000, ApiRateLimiter.backoffMillis(1, 1));
+        assertEquals(2000, ApiRateLimiter.backoffMillis(3, 0));
+        assertEquals(4000, ApiRateLimiter.backoffMillis(3, 1));
+        assertEquals(5 * 60 * 1000, ApiRateLimiter.backoffMillis(40, 1));
+    }
+
+    @Test
+    public void parseRetryAfter_readsSecondsAndDates() {
+        assertEquals(120000, ApiRateLimiter.parseRetryAfter("120", START));
+        assertEquals(30000, ApiRateLimiter.parseRetryAfter("Tue, 20 Nov 2018 00:00:30 GMT", START));
+        assertEquals(-1, ApiRateLimiter.parseRetryAfter(null, START));
+        assertEquals(-1, ApiRateLimiter.parseRetryAfter("soon", START));
+    }
+
+    /**
+     * A limiter whose clock is set by the test.
+     */
+    private static class FakeClockLimiter extends ApiRateLimiter {
+        long now = START;
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+}
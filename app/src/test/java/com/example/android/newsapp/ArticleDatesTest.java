@@ -0,0 +1,87 @@
+package com.example.android.newsapp;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the date parsing and formatting of {@link ArticleDates}.
+ */
+public class ArticleDatesTest {
+
+    @Test
+    public void parse_readsApiDates() {
+        assertEquals(1542708300000L, ArticleDates.parse("2018-11-20T10:05:00Z"));
+        assertEquals(0L, ArticleDates.parse("1970-01-01T00:00:00Z"));
+        assertEquals(1542672000000L, ArticleDates.parse("2018-11-20"));
+    }
+
+    @Test
+    public void parse_returnsUnknownForInvalidDates() {
+        assertEquals(ArticleDates.UNKNOWN, ArticleDates.parse(null));
+        assertEquals(ArticleDates.UNKNOWN, ArticleDates.parse(""));
+        assertEquals(ArticleDates.UNKNOWN, ArticleDates.parse("20 November 2018"));
+        assertEquals(ArticleDates.UNKNOWN, ArticleDates.parse("2018-13-20T10:05:00Z"));
+    }
+
+    @Test
+    public void format_showsTheDayOfTheApiDate() {
+        assertEquals("Nov 20, 2018", ArticleDates.format(ArticleDates.parse("2018-11-20T10:05:00Z")));
+        assertEquals("Nov 20, 2018", ArticleDates.format(ArticleDates.parse("2018-11-20T23:59:59Z")));
+        assertEquals("Dec 31, 1969", ArticleDates.format(-1));
+        assertEquals("", ArticleDates.format(ArticleDates.UNKNOWN));
+    }
+
+    @Test
+    public void format_doesNotAllocateForRecentDates() {
+        // Only runs where the JVM can measure the memory allocated by a thread.
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        // 200 articles published over the last 30 days, as a long article list shows them.
+        List<Article> articles = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            long publishedAt = ArticleDates.parse("2018-11-20T10:05:00Z") - i * 3 * 60 * 60 * 1000L;
+            articles.add(new Article("Title " + i, "Contributor", "World", publishedAt, "url" + i, ""));
+        }
+
+        // Warms up the date cache and the JIT.
+        int length = 0;
+        for (int pass = 0; pass < 50; pass++) {
+            length += formatAll(articles);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        int passes = 100;
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int pass = 0; pass < passes; pass++) {
+            length += formatAll(articles);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(length > 0);
+        // Measuring itself allocates a little, so allow well under one byte per article.
+        assertTrue("Allocated " + allocated + " bytes", allocated < articles.size() * passes / 4);
+    }
+
+    /**
+     * Reads the displayed values of every article. The allocations of binding whole rows are
+     * counted on a device by BindAllocationTest.
+     */
+    private static int formatAll(List<Article> articles) {
+        int length = 0;
+        for (int i = 0; i < articles.size(); i++) {
+            Article article = articles.get(i);
+            length += article.getTitle().length() + article.getContributor().length()
+                    + article.getSection().length() + ArticleDates.format(article.getPublishedAt()).length();
+        }
+        return length;
+    }
+}
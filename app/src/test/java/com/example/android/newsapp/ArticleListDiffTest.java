@@ -0,0 +1,150 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the list updates computed by {@link ArticleListDiff}.
+ */
+public class ArticleListDiffTest {
+
+    private static final long PUBLISHED_AT = ArticleDates.parse("2018-11-20T10:00:00Z");
+
+    @Test
+    public void calculate_refreshWithThreeNewArticlesOnlyInsertsThem() {
+        List<Article> oldList = articles("a", "b", "c", "d");
+        List<Article> newList = articles("x", "y", "z", "a", "b", "c", "d");
+
+        RecordingCallback callback = apply(oldList, newList);
+        assertEquals(3, callback.mInserted);
+        assertEquals(0, callback.mRemoved + callback.mMoved + callback.mChanged);
+        assertEquals(Arrays.asList("inserted 0 3"), callback.mLog);
+    }
+
+    @Test
+    public void calculate_movesOnlyTheMisplacedArticle() {
+        RecordingCallback callback = apply(articles("a", "b", "c", "d"), articles("b", "c", "d", "a"));
+        assertEquals(1, callback.mMoved);
+        assertEquals(0, callback.mInserted + callback.mRemoved + callback.mChanged);
+    }
+
+    @Test
+    public void calculate_reportsChangedContents() {
+        List<Article> newList = articles("a", "b");
+        newList.set(1, new Article("Updated", null, "World", PUBLISHED_AT, "b", ""));
+
+        RecordingCallback callback = apply(articles("a", "b"), newList);
+        assertEquals(Arrays.asList("changed 1 1"), callback.mLog);
+    }
+
+    @Test
+    public void calculate_producesNewListForRandomEdits() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            apply(randomArticles(random), randomArticles(random));
+        }
+    }
+
+    /**
+     * Applies the updates to a copy of the old list and checks that it turns into the new list.
+     */
+    private static RecordingCallback apply(List<Article> oldList, final List<Article> newList) {
+        RecordingCallback callback = new RecordingCallback(new ArrayList<>(oldList), newList);
+        ArticleListDiff.calculate(oldList, newList).dispatchTo(callback);
+        assertEquals(newList.size(), callback.mList.size());
+        for (int i = 0; i < newList.size(); i++) {
+            if (callback.mList.get(i) == null) {
+                // Only articles that were not in the old list are inserted.
+                assertFalse(urls(oldList).contains(newList.get(i).getUrl()));
+                callback.mList.set(i, newList.get(i));
+            }
+        }
+        assertEquals(urls(newList), urls(callback.mList));
+        return callback;
+    }
+
+    private static List<Article> articles(String... urls) {
+        List<Article> articles = new ArrayList<>();
+        for (String url : urls) {
+            articles.add(new Article("Title " + url, null, "World", PUBLISHED_AT, url, ""));
+        }
+        return articles;
+    }
+
+    private static List<Article> randomArticles(Random random) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            if (random.nextBoolean()) {
+                urls.add(String.valueOf((char) ('a' + i)));
+            }
+        }
+        Collections.shuffle(urls, random);
+        return articles(urls.toArray(new String[urls.size()]));
+    }
+
+    private static List<String> urls(List<Article> articles) {
+        List<String> urls = new ArrayList<>();
+        for (Article article : articles) {
+            urls.add(article.getUrl());
+        }
+        return urls;
+    }
+
+    /**
+     * Applies the updates to a list, taking inserted articles from the new list.
+     */
+    private static class RecordingCallback implements ArticleListDiff.Callback {
+        private final List<Article> mList;
+        private final List<Article> mNewList;
+        private final List<String> mLog = new ArrayList<>();
+        private int mInserted;
+        private int mRemoved;
+        private int mMoved;
+        private int mChanged;
+
+        RecordingCallback(List<Article> list, List<Article> newList) {
+            mList = list;
+            mNewList = newList;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mLog.add("inserted " + position + " " + count);
+            mInserted += count;
+            for (int i = 0; i < count; i++) {
+                // Inserted articles reach their new positions after the later updates, so a
+                // placeholder is inserted and replaced at the end.
+                mList.add(position + i, null);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mLog.add("removed " + position + " " + count);
+            mRemoved += count;
+            for (int i = 0; i < count; i++) {
+                mList.remove(position);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mLog.add("moved " + fromPosition + " " + toPosition);
+            mMoved++;
+            mList.add(toPosition, mList.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            mLog.add("changed " + position + " " + count);
+            mChanged += count;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the cache keys and size bound of {@link ArticleResponseCache}.
+ */
+public class ArticleResponseCacheTest {
+
+    private static final long PUBLISHED_AT = ArticleDates.parse("2018-11-20T10:00:00Z");
+
+    @Test
+    public void keyFor_leavesOutApiKey() {
+        assertEquals("https://content.guardianapis.com/world?order-by=newest&page-size=10",
+                ArticleResponseCache.keyFor(
+                        "https://content.guardianapis.com/world?page-size=10&order-by=newest&api-key=secret"));
+    }
+
+    @Test
+    public void keyFor_ignoresParameterOrder() {
+        assertEquals(
+                ArticleResponseCache.keyFor("https://content.guardianapis.com/world?q=&page-size=10&api-key="),
+                ArticleResponseCache.keyFor("https://content.guardianapis.com/world?page-size=10&q="));
+    }
+
+    @Test
+    public void put_dropsLeastRecentlyUsedResponsesBeyondArticleBound() {
+        ArticleResponseCache cache = new ArticleResponseCache();
+        cache.put("sport", entryOf(200));
+        cache.put("world", entryOf(200));
+        cache.get("sport");
+        cache.put("film", entryOf(200));
+
+        assertNotNull(cache.get("sport"));
+        assertNull(cache.get("world"));
+        assertNotNull(cache.get("film"));
+        assertEquals(400, cache.articleCount());
+    }
+
+    private static ArticleResponseCache.Entry entryOf(int size) {
+        List<Article> articles = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            articles.add(new Article("Title " + i, null, "Sport", PUBLISHED_AT,
+                    "https://www.theguardian.com/" + i, ""));
+        }
+        return new ArticleResponseCache.Entry(articles, null, null, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the full-text queries and merged results of {@link ArticleStore}.
+ */
+public class ArticleStoreTest {
+
+    @Test
+    public void toMatchQuery_matchesWordPrefixes() {
+        assertEquals("climate* change*", ArticleStore.toMatchQuery("climate change"));
+    }
+
+    @Test
+    public void toMatchQuery_dropsOperatorsAndPunctuation() {
+        assertEquals("trump* not* biden*", ArticleStore.toMatchQuery("  \"trump\" -NOT (biden*) "));
+        assertEquals("", ArticleStore.toMatchQuery(" - "));
+    }
+
+    @Test
+    public void mergeNewer_putsNewerArticlesFirstWithoutDuplicates() {
+        Article latest = article("latest");
+        Article updated = article("updated");
+        Article oldest = article("oldest");
+        List<Article> merged = ArticleStore.mergeNewer(Arrays.asList(latest, updated),
+                Arrays.asList(article("updated"), oldest), 10);
+
+        assertEquals(Arrays.asList(latest, updated, oldest), merged);
+        assertEquals(Arrays.asList(latest, updated), ArticleStore.mergeNewer(Arrays.asList(latest, updated),
+                Arrays.asList(oldest), 2));
+    }
+
+    private static Article article(String url) {
+        return new Article(url, null, "World", 0, url, "");
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the splitting and merging of a multi-section feed by {@link CombinedFeed}.
+ */
+public class CombinedFeedTest {
+
+    @Test
+    public void splitBySection_keepsSectionAndArticleOrder() {
+        List<Article> articles = Arrays.asList(article("a", "world", 5), article("b", "sport", 4),
+                article("c", "world", 3), article("d", "film", 2), article("e", null, 1));
+
+        Map<String, List<Article>> bySection =
+                CombinedFeed.splitBySection(articles, Arrays.asList("sport", "world", "books"));
+
+        assertEquals(Arrays.asList("sport", "world", "books"), new ArrayList<>(bySection.keySet()));
+        assertEquals("[b]", urls(bySection.get("sport")));
+        assertEquals("[a, c]", urls(bySection.get("world")));
+        assertTrue(bySection.get("books").isEmpty());
+    }
+
+    @Test
+    public void mergeByDate_ordersNewestFirstWithoutDuplicatesUpToTheLimit() {
+        List<Article> fresh = Arrays.asList(article("new", "world", 30), article("same", "world", 10));
+        List<Article> held = Arrays.asList(article("newer held", "world", 40), article("same", "world", 10),
+                article("old", "world", 5));
+
+        List<Article> merged = CombinedFeed.mergeByDate(fresh, held, 3);
+
+        assertEquals("[newer held, new, same]", urls(merged));
+        // The article in both lists is the fresh one.
+        assertSame(fresh.get(1), merged.get(2));
+    }
+
+    private static Article article(String url, String sectionId, long publishedAt) {
+        return new Article("Title " + url, null, "Section", sectionId, publishedAt, url, "");
+    }
+
+    private static String urls(List<Article> articles) {
+        List<String> urls = new ArrayList<>();
+        for (Article article : articles) {
+            urls.add(article.getUrl());
+        }
+        return urls.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the columnar storage of {@link CompactArticleList}.
+ */
+public class CompactArticleListTest {
+
+    private static final long PUBLISHED_AT = ArticleDates.parse("2018-11-20T10:05:00Z");
+
+    @Test
+    public void get_returnsTheStoredArticles() {
+        List<Article> articles = new ArrayList<>();
+        articles.add(new Article("Caf\u00e9 culture \u2013 a guide", "Lauren Gambino", "US news", "us-news",
+                PUBLISHED_AT, "https://www.theguardian.com/a", "https://media.guim.co.uk/a.jpg"));
+        articles.add(new Article("No contributor", null, "World", PUBLISHED_AT + 1,
+                "https://www.theguardian.com/b", ""));
+
+        CompactArticleList compact = CompactArticleList.copyOf(articles);
+
+        assertEquals(2, compact.size());
+        for (int i = 0; i < articles.size(); i++) {
+            Article expected = articles.get(i);
+            Article actual = compact.get(i);
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getContributor(), actual.getContributor());
+            assertEquals(expected.getSection(), actual.getSection());
+            assertEquals(expected.getSectionId(), actual.getSectionId());
+            assertEquals(expected.getPublishedAt(), actual.getPublishedAt());
+            assertEquals(expected.getUrl(), actual.getUrl());
+            assertEquals(expected.getThumbnailUrl(), actual.getThumbnailUrl());
+        }
+        assertSame(compact, CompactArticleList.copyOf(compact));
+    }
+
+    @Test
+    public void get_sharesSectionAndContributorInstances() {
+        List<Article> articles = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            articles.add(new Article("Title " + i, new String("Ed Pilkington"), new String("US news"),
+                    PUBLISHED_AT, "url" + i, ""));
+        }
+
+        CompactArticleList compact = CompactArticleList.copyOf(articles);
+
+        assertSame(compact.get(0).getSection(), compact.get(2).getSection());
+        assertSame(compact.get(0).getContributor(), compact.get(1).getContributor());
+        assertSame(StringDictionary.getShared().intern("US news"), compact.get(1).getSection());
+    }
+
+    @Test
+    public void copyOf_storesTextOnceAsUtf8() {
+        List<Article> articles = new ArrayList<>();
+        articles.add(new Article("Title", null, "World", PUBLISHED_AT, "url", "thumb"));
+        articles.add(new Article("\u00dcn\u00efcode", null, "World", PUBLISHED_AT, "u", null));
+
+        CompactArticleList compact = CompactArticleList.copyOf(articles);
+
+        // The accented title takes 9 bytes in UTF-8 and a null thumbnail URL is kept as an empty String.
+        assertEquals(5 + 3 + 5 + 9 + 1, compact.textBytes());
+        assertEquals("", compact.get(1).getThumbnailUrl());
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the priority order, reserved worker, cancellation and metrics of {@link FetchScheduler}.
+ */
+public class FetchSchedulerTest {
+
+    @Test
+    public void execute_runsWaitingFetchesByPriorityThenInOrder() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(2, 2, new PipelineMetrics());
+        CountDownLatch releaseVisible = new CountDownLatch(1);
+        CountDownLatch releaseBackground = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(4);
+
+        scheduler.execute(FetchScheduler.API, FetchScheduler.PRIORITY_VISIBLE, blocking(releaseVisible));
+        scheduler.execute(FetchScheduler.API, FetchScheduler.PRIORITY_PREFETCH, blocking(releaseBackground));
+        waitUntilRunning(scheduler, 2);
+        scheduler.execute(FetchScheduler.API, FetchScheduler.PRIORITY_SYNC, recording("sync", order, done));
+        scheduler.execute(FetchScheduler.API, FetchScheduler.PRIORITY_PREFETCH, recording("prefetch", order, done));
+        scheduler.execute(FetchScheduler.API, FetchScheduler.PRIORITY_VISIBLE, recording("visible 1", order, done));
+        scheduler.execute(FetchScheduler.API, FetchScheduler.PRIORITY_VISIBLE, recording("visible 2", order, done));
+        assertEquals(4, scheduler.getQueueDepth(FetchScheduler.API));
+
+        releaseVisible.countDown();
+        // Only the worker kept for visible fetches is free, so the background fetches keep waiting.
+        while (order.size() < 2) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, scheduler.getQueueDepth(FetchScheduler.API));
+        releaseBackground.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("[visible 1, visible 2, prefetch, sync]", order.toString());
+    }
+
+    @Test
+    public void execute_visibleFetchDoesNotWaitBehindBackgroundWork() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(2, 2, new PipelineMetrics());
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            scheduler.execute(FetchScheduler.IMAGES, FetchScheduler.PRIORITY_NEAR_VIEWPORT, blocking(release));
+        }
+        CountDownLatch visibleRan = new CountDownLatch(1);
+        scheduler.execute(FetchScheduler.IMAGES, FetchScheduler.PRIORITY_VISIBLE, counting(visibleRan));
+
+        assertTrue(visibleRan.await(5, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.getQueueDepth(FetchScheduler.IMAGES));
+        release.countDown();
+    }
+
+    @Test
+    public void cancel_dropsFetchThatHasNotStarted() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(2, 2, new PipelineMetrics());
+        CountDownLatch release = new CountDownLatch(1);
+        FetchScheduler.Token running =
+                scheduler.execute(FetchScheduler.API, FetchScheduler.PRIORITY_SYNC, blocking(release));
+        waitUntilRunning(scheduler, 1);
+        CountDownLatch ran = new CountDownLatch(1);
+        FetchScheduler.Token waiting =
+                scheduler.execute(FetchScheduler.API, FetchScheduler.PRIORITY_SYNC, counting(ran));
+
+        assertTrue(waiting.cancel());
+        assertTrue(waiting.isCancelled());
+        assertFalse(running.cancel());
+        assertEquals(0, scheduler.getQueueDepth(FetchScheduler.API));
+        release.countDown();
+        assertFalse(ran.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void raisePriority_movesWaitingFetchAhead() throws Exception {
+        FetchScheduler scheduler = new FetchScheduler(2, 2, new PipelineMetrics());
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.execute(FetchScheduler.IMAGES, FetchScheduler.PRIORITY_PREFETCH, blocking(release));
+        waitUntilRunning(scheduler, 1);
+        CountDownLatch ran = new CountDownLatch(1);
+        FetchScheduler.Token token =
+                scheduler.execute(FetchScheduler.IMAGES, FetchScheduler.PRIORITY_NEAR_VIEWPORT, counting(ran));
+        assertFalse(ran.await(50, TimeUnit.MILLISECONDS));
+
+        token.raisePriority(FetchScheduler.PRIORITY_VISIBLE);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void execute_recordsQueueDepthAndWaitTimeByPriority() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics();
+        FetchScheduler scheduler = new FetchScheduler(2, 2, metrics);
+        CountDownLatch ran = new CountDownLatch(2);
+        scheduler.execute(FetchScheduler.API, FetchScheduler.PRIORITY_VISIBLE, counting(ran));
+        scheduler.execute(FetchScheduler.IMAGES, FetchScheduler.PRIORITY_SYNC, counting(ran));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, metrics.getTotal("scheduler.api.depth").getCount());
+        assertEquals(0, metrics.getTotal("scheduler.api.depth").getMax());
+        assertEquals(1, metrics.getTotal("scheduler.api.wait.visible").getCount());
+        assertEquals(1, metrics.getTotal("scheduler.images.wait.sync").getCount());
+        assertTrue(metrics.getSummary().contains("scheduler.api.depth n=1 p50=0 "));
+    }
+
+    private static Runnable blocking(final CountDownLatch release) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static Runnable recording(final String name, final List<String> order, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                done.countDown();
+            }
+        };
+    }
+
+    private static Runnable counting(final CountDownLatch ran) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        };
+    }
+
+    private static void waitUntilRunning(FetchScheduler scheduler, int count) throws InterruptedException {
+        while (scheduler.getRunningCount(FetchScheduler.API) + scheduler.getRunningCount(FetchScheduler.IMAGES) < count) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the compression and statistics of {@link HttpTransport}.
+ */
+public class HttpTransportTest {
+
+    @Test
+    public void get_decompressesGzipBodyAndCountsBytes() throws Exception {
+        final byte[] body = "{\"response\":{\"results\":[]}}".getBytes("UTF-8");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(body);
+        gzip.close();
+        final byte[] wireBody = compressed.toByteArray();
+
+        final ServerSocket serverSocket = new ServerSocket(0);
+        Thread server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = serverSocket.accept();
+                    InputStream in = socket.getInputStream();
+                    // Reads the request headers up to the empty line that ends them.
+                    int matched = 0;
+                    while (matched < 4) {
+                        int b = in.read();
+                        matched = (b == '\r' || b == '\n') ? matched + 1 : 0;
+                    }
+                    OutputStream out = socket.getOutputStream();
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Encoding: gzip\r\nContent-Length: "
+                            + wireBody.length + "\r\n\r\n").getBytes("UTF-8"));
+                    out.write(wireBody);
+                    out.flush();
+                    socket.close();
+                } catch (Exception e) {
+                    // The test fails on the client side.
+                }
+            }
+        });
+        server.start();
+
+        URL url = new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/search");
+        HttpTransport.Response response = HttpTransport.getInstance().get(url, null);
+        byte[] received = response.readBody();
+        response.close();
+        server.join();
+        serverSocket.close();
+
+        assertArrayEquals(body, received);
+        HttpTransport.HostStats stats = HttpTransport.getInstance().getHostStats().get("127.0.0.1");
+        assertEquals(1, stats.getRequestCount());
+        assertEquals(0, stats.getActiveCount());
+        assertEquals(wireBody.length, stats.getWireBytes());
+        assertEquals(body.length, stats.getDecodedBytes());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the buckets and percentiles of {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void getPercentile_isWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(5000, histogram.getPercentile(0.5), 5000.0 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(9500, histogram.getPercentile(0.95), 9500.0 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(9900, histogram.getPercentile(0.99), 9900.0 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000, histogram.getMean());
+    }
+
+    @Test
+    public void bucketOf_growsWithTheValue() {
+        int previous = -1;
+        for (long value = 0; value < 1 << 20; value += 7) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket >= previous);
+            previous = bucket;
+        }
+        assertTrue(LatencyHistogram.bucketOf(Long.MAX_VALUE) > previous);
+    }
+
+    @Test
+    public void add_mergesCounts() {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        fast.record(10);
+        slow.record(1000);
+        slow.record(-5);
+        fast.add(slow);
+
+        assertEquals(3, fast.getCount());
+        assertEquals(0, fast.getPercentile(0.1));
+        assertEquals(1000, fast.getPercentile(1), 1000.0 / LatencyHistogram.SUB_BUCKETS);
+        assertEquals(0, new LatencyHistogram().getPercentile(0.5));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the local filtering of {@link LiveSearch}.
+ */
+public class LiveSearchTest {
+
+    @Test
+    public void normalize_trimsAndLowerCases() {
+        assertEquals("climate change", LiveSearch.normalize("  Climate   CHANGE "));
+        assertEquals("", LiveSearch.normalize(null));
+    }
+
+    @Test
+    public void filter_keepsArticlesWithWordsStartingWithEveryQueryWord() {
+        List<Article> articles = new ArrayList<>();
+        articles.add(article("Climate talks stall", "Fiona Harvey"));
+        articles.add(article("Reclimbing the charts", null));
+        articles.add(article("Heatwave and climate", "Damian Carrington"));
+
+        List<Article> matches = LiveSearch.filter(articles, "clim har");
+
+        assertEquals(1, matches.size());
+        assertEquals("Climate talks stall", matches.get(0).getTitle());
+        assertEquals(2, LiveSearch.filter(articles, "climate").size());
+    }
+
+    @Test
+    public void localResults_filtersTheLongestKnownPrefix() {
+        final Map<String, List<Article>> known = new HashMap<>();
+        List<Article> climResults = new ArrayList<>();
+        climResults.add(article("Climate talks stall", null));
+        climResults.add(article("Clinical trials", null));
+        known.put("cl", new ArrayList<Article>());
+        known.put("clim", climResults);
+        LiveSearch.ResultLookup lookup = new LiveSearch.ResultLookup() {
+            @Override
+            public List<Article> resultsFor(String query) {
+                return known.get(query);
+            }
+        };
+
+        List<Article> results = LiveSearch.localResults("climate", lookup);
+
+        assertEquals(1, results.size());
+        assertSame(climResults, LiveSearch.localResults("clim", lookup));
+        assertNull(LiveSearch.localResults("weather", lookup));
+    }
+
+    private static Article article(String title, String contributor) {
+        return new Article(title, contributor, "Environment", 0, title, "");
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the rolling window, summary and JSON export of {@link PipelineMetrics}.
+ */
+public class PipelineMetricsTest {
+
+    @Test
+    public void getRecent_dropsValuesOlderThanTheWindow() {
+        TestMetrics metrics = new TestMetrics();
+        metrics.record(PipelineMetrics.API_PARSE, 100);
+        metrics.mNow += PipelineMetrics.SLICE_MILLIS;
+        metrics.record(PipelineMetrics.API_PARSE, 200);
+        assertEquals(2, metrics.getRecent(PipelineMetrics.API_PARSE).getCount());
+
+        metrics.mNow += PipelineMetrics.WINDOW_MILLIS - PipelineMetrics.SLICE_MILLIS;
+        assertEquals(1, metrics.getRecent(PipelineMetrics.API_PARSE).getCount());
+        metrics.mNow += PipelineMetrics.SLICE_MILLIS;
+        assertEquals(0, metrics.getRecent(PipelineMetrics.API_PARSE).getCount());
+        assertEquals(2, metrics.getTotal(PipelineMetrics.API_PARSE).getCount());
+    }
+
+    @Test
+    public void getSummary_listsRecentPercentilesWithUnits() {
+        TestMetrics metrics = new TestMetrics();
+        assertEquals("", metrics.getSummary());
+        metrics.record(PipelineMetrics.API_BYTES, 2048);
+        metrics.record(PipelineMetrics.API_FIRST_BYTE, 1500);
+
+        assertEquals("api.bytes n=1 p50=2.0kB p95=2.0kB p99=2.0kB\n"
+                + "api.first_byte n=1 p50=1.5ms p95=1.5ms p99=1.5ms", metrics.getSummary());
+    }
+
+    @Test
+    public void toJson_exportsRecentAndTotalHistograms() {
+        TestMetrics metrics = new TestMetrics();
+        metrics.record(PipelineMetrics.THUMBNAIL_DECODE, 4);
+
+        assertEquals("{\"generatedAt\":" + metrics.mNow + ",\"windowMillis\":" + PipelineMetrics.WINDOW_MILLIS
+                + ",\"metrics\":{\"thumbnail.decode\":{\"unit\":\"us\","
+                + "\"recent\":{\"count\":1,\"mean\":4,\"p50\":4,\"p95\":4,\"p99\":4,\"max\":4},"
+                + "\"total\":{\"count\":1,\"mean\":4,\"p50\":4,\"p95\":4,\"p99\":4,\"max\":4}}}}", metrics.toJson());
+    }
+
+    /**
+     * Metrics with a clock the test moves forward.
+     */
+    private static class TestMetrics extends PipelineMetrics {
+        private long mNow = 1000 * PipelineMetrics.SLICE_MILLIS;
+
+        @Override
+        long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
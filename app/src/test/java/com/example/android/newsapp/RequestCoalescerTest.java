@@ -0,0 +1,128 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the merging and cancelling of requests by {@link RequestCoalescer}.
+ */
+public class RequestCoalescerTest {
+
+    private static final Article ARTICLE = new Article("Title", null, "World", 0, "url", "");
+
+    @Test
+    public void fetch_mergesIdenticalConcurrentRequests() throws Exception {
+        RequestCoalescer coalescer = RequestCoalescer.getInstance();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        final RequestCoalescer.Fetch fetch = blockingFetch(release, runs);
+        final List<Article> joinerParsed = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<List<Article>> first = executor.submit(new Callable<List<Article>>() {
+            @Override
+            public List<Article> call() {
+                return RequestCoalescer.getInstance().fetch("merge", fetch, null, null, FetchScheduler.PRIORITY_VISIBLE);
+            }
+        });
+        waitUntilStarted(runs);
+        int coalescedBefore = coalescer.getCoalescedCount();
+        Future<List<Article>> second = executor.submit(new Callable<List<Article>>() {
+            @Override
+            public List<Article> call() {
+                return RequestCoalescer.getInstance().fetch("merge", fetch, new ArticleJsonParser.Listener() {
+                    @Override
+                    public void onArticle(Article article) {
+                        joinerParsed.add(article);
+                    }
+                }, null, FetchScheduler.PRIORITY_VISIBLE);
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer.getCoalescedCount() == coalescedBefore && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(coalescedBefore + 1, coalescer.getCoalescedCount());
+        release.countDown();
+
+        assertEquals(1, first.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, second.get(5, TimeUnit.SECONDS).size());
+        assertEquals(1, runs.get());
+        // The article parsed before the second request joined was replayed to it.
+        assertEquals(1, joinerParsed.size());
+        executor.shutdown();
+    }
+
+    @Test
+    public void fetch_cancelledRequestReturnsRightAwayAndAbortsTheFetch() throws Exception {
+        RequestCoalescer coalescer = RequestCoalescer.getInstance();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        final RequestCoalescer.Fetch fetch = blockingFetch(release, runs);
+        final RequestCoalescer.CancelSignal signal = new RequestCoalescer.CancelSignal();
+        int abortedBefore = coalescer.getAbortedCount();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<List<Article>> result = executor.submit(new Callable<List<Article>>() {
+            @Override
+            public List<Article> call() {
+                return RequestCoalescer.getInstance().fetch("cancel", fetch, null, signal,
+                        FetchScheduler.PRIORITY_VISIBLE);
+            }
+        });
+        waitUntilStarted(runs);
+        signal.cancel();
+
+        assertNull(result.get(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalescer.getAbortedCount() == abortedBefore && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(abortedBefore + 1, coalescer.getAbortedCount());
+        release.countDown();
+        executor.shutdown();
+    }
+
+    /**
+     * Returns a fetch that parses one article, then waits until it is released.
+     */
+    private static RequestCoalescer.Fetch blockingFetch(final CountDownLatch release, final AtomicInteger runs) {
+        return new RequestCoalescer.Fetch() {
+            @Override
+            public List<Article> run(RequestCoalescer.Call call) {
+                runs.incrementAndGet();
+                call.onArticle(ARTICLE);
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return null;
+                }
+                List<Article> articles = new ArrayList<>();
+                articles.add(ARTICLE);
+                return articles;
+            }
+        };
+    }
+
+    /**
+     * Waits until the first fetch has started running.
+     */
+    private static void waitUntilStarted(AtomicInteger runs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (runs.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals("The fetch did not start", 1, runs.get());
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the section predictions of {@link SectionUsageModel}.
+ */
+public class SectionUsageModelTest {
+
+    @Test
+    public void predictNext_prefersUsualNextSection() {
+        SectionUsageModel model = new SectionUsageModel();
+        for (String section : new String[]{"us-news", "world", "us-news", "world", "us-news", "sport",
+                "sport", "sport", "sport"}) {
+            model.recordVisit(section);
+        }
+        // Sport is opened more often overall, but world usually follows us-news.
+        assertEquals(Arrays.asList("world", "sport"), model.predictNext("us-news", 2));
+        assertEquals(Arrays.asList("world"), model.predictNext("us-news", 1));
+    }
+
+    @Test
+    public void mostVisited_ordersByVisitCount() {
+        SectionUsageModel model = new SectionUsageModel();
+        for (String section : new String[]{"world", "sport", "sport", "us-news", "sport", "world"}) {
+            model.recordVisit(section);
+        }
+        assertEquals(Arrays.asList("sport", "world"), model.mostVisited(2));
+        assertEquals(Arrays.asList("sport", "world", "us-news"), model.mostVisited(5));
+    }
+
+    @Test
+    public void serialize_roundTrips() {
+        SectionUsageModel model = new SectionUsageModel();
+        model.recordVisit("us-news");
+        model.recordVisit("world");
+        model.recordVisit("us-news");
+
+        SectionUsageModel restored = SectionUsageModel.deserialize(model.serialize());
+        assertEquals(model.probability("us-news", "world"), restored.probability("us-news", "world"), 0);
+        assertEquals(model.probability("world", "us-news"), restored.probability("world", "us-news"), 0);
+        assertTrue(SectionUsageModel.deserialize("not a model").predictNext("world", 2).isEmpty());
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.android.newsapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the sample size calculation of {@link ThumbnailDecoder}.
+ */
+public class ThumbnailDecoderTest {
+
+    @Test
+    public void calculateInSampleSize_keepsImageAtLeastTargetSize() {
+        // A 500x300 Guardian thumbnail shown 152 pixels wide is decoded at half size.
+        assertEquals(2, ThumbnailDecoder.calculateInSampleSize(500, 300, 152, 0));
+        // At 456 pixels wide, halving would make it too small.
+        assertEquals(1, ThumbnailDecoder.calculateInSampleSize(500, 300, 456, 0));
+        assertEquals(4, ThumbnailDecoder.calculateInSampleSize(2000, 1200, 400, 240));
+    }
+
+    @Test
+    public void calculateInSampleSize_neverUpsamples() {
+        assertEquals(1, ThumbnailDecoder.calculateInSampleSize(100, 60, 500, 300));
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.newsapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ThumbnailDiskCache}.
+ */
+public class ThumbnailDiskCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void get_returnsStoredBytes() throws Exception {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(folder.getRoot(), 100);
+        cache.put("a", new byte[] {1, 2, 3});
+
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() throws Exception {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(folder.getRoot(), 10);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        // Uses "a", so "b" is now the least recently used file.
+        cache.get("a");
+        cache.put("c", new byte[4]);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(8, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertFalse(new File(folder.getRoot(), "b").exists());
+    }
+
+    @Test
+    public void open_keepsExistingFilesAndDeletesTemporaryFiles() throws Exception {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(folder.getRoot(), 100);
+        cache.put("a", new byte[] {7});
+
+        // A file left behind by a crash while it was being written.
+        FileOutputStream partial = new FileOutputStream(new File(folder.getRoot(), "b.1.tmp"));
+        partial.write(new byte[] {1, 2});
+        partial.close();
+
+        ThumbnailDiskCache reopened = new ThumbnailDiskCache(folder.getRoot(), 100);
+        assertArrayEquals(new byte[] {7}, reopened.get("a"));
+        assertEquals(1, reopened.entryCount());
+        assertEquals(1, reopened.size());
+        assertFalse(new File(folder.getRoot(), "b.1.tmp").exists());
+    }
+
+    @Test
+    public void keyForUrl_isFileNameSafe() {
+        String key = ThumbnailDiskCache.keyForUrl("https://media.guim.co.uk/abc/500.jpg?w=1");
+        assertEquals(32, key.length());
+        assertTrue(key.matches("[0-9a-f]+"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.newsapp.benchmark;
+
+import com.example.android.newsapp.Article;
+import com.example.android.newsapp.ArticleDates;
+import com.example.android.newsapp.ArticleJsonParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the publication dates of the 200 results fixture: parsing them when the articles
+ * are read, and formatting them for display as
+ * {@code ArticleAdapter.onBindViewHolder} does for every bound row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DateBenchmark {
+
+    /** Dates as the API sends them, and as they are parsed **/
+    private String[] mDates;
+    private long[] mPublishedAt;
+
+    @Setup
+    public void setUp() throws IOException {
+        final List<Article> articles = new ArrayList<>();
+        ArticleJsonParser.parse(new ByteArrayInputStream(Fixtures.response(200)), new ArticleJsonParser.Listener() {
+            @Override
+            public void onArticle(Article article) {
+                articles.add(article);
+            }
+        });
+        mDates = new String[articles.size()];
+        mPublishedAt = new long[articles.size()];
+        for (int i = 0; i < articles.size(); i++) {
+            mPublishedAt[i] = articles.get(i).getPublishedAt();
+            mDates[i] = ArticleDates.formatIso(mPublishedAt[i]);
+        }
+    }
+
+    /**
+     * Parses the date of every article, as the parser does once per article.
+     */
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String date : mDates) {
+            blackhole.consume(ArticleDates.parse(date));
+        }
+    }
+
+    /**
+     * Formats the date of every article for display, as binding every row does.
+     */
+    @Benchmark
+    public void formatForDisplay(Blackhole blackhole) {
+        for (long publishedAt : mPublishedAt) {
+            blackhole.consume(ArticleDates.format(publishedAt));
+        }
+    }
+
+    /**
+     * Formats the date of every article as an API date, as a from-date query parameter does.
+     */
+    @Benchmark
+    public void formatIso(Blackhole blackhole) {
+        for (long publishedAt : mPublishedAt) {
+            blackhole.consume(ArticleDates.formatIso(publishedAt));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.android.newsapp.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads the Guardian API responses the benchmarks parse, from the "fixtures" resources.
+ * <p/>
+ * Each fixture is a search response with show-tags=contributor and show-fields=thumbnail, as the
+ * app requests them, with 10, 50 or 200 results.
+ */
+final class Fixtures {
+
+    /**
+     * A private constructor for {@link Fixtures} because its methods are static.
+     */
+    private Fixtures() {
+    }
+
+    /**
+     * Returns the bytes of the response with the number of results.
+     */
+    static byte[] response(int results) throws IOException {
+        String name = "/fixtures/search-" + results + ".json";
+        InputStream stream = Fixtures.class.getResourceAsStream(name);
+        if (stream == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android.newsapp.benchmark;
+
+import com.example.android.newsapp.Article;
+import com.example.android.newsapp.ArticleJsonParser;
+import com.example.android.newsapp.CompactArticleList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing a Guardian API response into {@link Article}s, as
+ * {@code QueryUtils} does for every request, and storing them in the
+ * {@link CompactArticleList} the response cache keeps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParseBenchmark {
+
+    /** Number of results in the response **/
+    @Param({"10", "50", "200"})
+    public int results;
+
+    private byte[] mResponse;
+
+    @Setup
+    public void setUp() throws IOException {
+        mResponse = Fixtures.response(results);
+    }
+
+    /**
+     * Parses the response and passes each article to the listener, like a load that displays
+     * the articles as they are parsed.
+     */
+    @Benchmark
+    public void parse(final Blackhole blackhole) throws IOException {
+        ArticleJsonParser.parse(new ByteArrayInputStream(mResponse), new ArticleJsonParser.Listener() {
+            @Override
+            public void onArticle(Article article) {
+                blackhole.consume(article);
+            }
+        });
+    }
+
+    /**
+     * Parses the response into a list and copies it into the compact list of the response cache.
+     */
+    @Benchmark
+    public List<Article> parseAndCache() throws IOException {
+        final List<Article> articles = new ArrayList<>();
+        ArticleJsonParser.parse(new ByteArrayInputStream(mResponse), new ArticleJsonParser.Listener() {
+            @Override
+            public void onArticle(Article article) {
+                articles.add(article);
+            }
+        });
+        return CompactArticleList.copyOf(articles);
+    }
+}